@@ -0,0 +1,42 @@
+var converter = new showdown.Converter();
+converter.setFlavor('github');
+var text = '';
+
+// Replaces deleteCount characters at start by the inserted text and updates the preview
+window.applyTextChange = function(start, deleteCount, inserted) {
+    text = text.substring(0, start) + inserted + text.substring(start + deleteCount);
+    render();
+};
+
+function render() {
+    var content = document.getElementById('content');
+    var rendered = document.createElement('div');
+    rendered.innerHTML = converter.makeHtml(text);
+
+    // Only replace the top level blocks that changed, so unchanged parts of the
+    // preview (e.g. images) are left alone
+    var oldNodes = content.childNodes;
+    var newNodes = rendered.childNodes;
+    var common = Math.min(oldNodes.length, newNodes.length);
+    var prefix = 0;
+    while (prefix < common && oldNodes[prefix].isEqualNode(newNodes[prefix])) {
+        prefix++;
+    }
+    var suffix = 0;
+    while (suffix < common - prefix
+            && oldNodes[oldNodes.length - 1 - suffix].isEqualNode(newNodes[newNodes.length - 1 - suffix])) {
+        suffix++;
+    }
+
+    var removeCount = oldNodes.length - prefix - suffix;
+    for (var i = 0; i < removeCount; i++) {
+        content.removeChild(oldNodes[prefix]);
+    }
+    var anchor = prefix < oldNodes.length ? oldNodes[prefix] : null;
+    var insertCount = newNodes.length - prefix - suffix;
+    var fragment = document.createDocumentFragment();
+    for (i = 0; i < insertCount; i++) {
+        fragment.appendChild(newNodes[prefix]);
+    }
+    content.insertBefore(fragment, anchor);
+}
@@ -91,9 +91,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 import fr.castorflex.android.smoothprogressbar.SmoothProgressBar;
+import io.reactivex.ObservableTransformer;
 import io.reactivex.SingleTransformer;
+import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.disposables.CompositeDisposable;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
 
 public abstract class BaseActivity extends AppCompatActivity implements
         SwipeRefreshLayout.OnRefreshListener,
@@ -638,6 +641,13 @@ public abstract class BaseActivity extends AppCompatActivity implements
                 .compose(mRxLoader.makeSingleTransformer(id, force));
     }
 
+    public <T> ObservableTransformer<T, T> makeLoaderObservable(int id, boolean force) {
+        return upstream -> upstream
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .compose(mRxLoader.makeObservableTransformer(id, force));
+    }
+
     protected void setErrorViewVisibility(boolean visible, Throwable e) {
         View content = findViewById(R.id.content);
         View error = findViewById(R.id.error);
@@ -23,7 +23,9 @@ import android.content.res.Configuration;
 import android.os.Build;
 import android.util.LongSparseArray;
 
+import com.gh4a.db.ModelStore;
 import com.gh4a.fragment.SettingsFragment;
+import com.gh4a.utils.HttpImageGetter;
 import com.gh4a.utils.StringUtils;
 import com.gh4a.worker.NotificationsWorker;
 import com.meisolsson.githubsdk.model.User;
@@ -240,6 +242,8 @@ public class Gh4Application extends Application implements
                 .apply();
 
         NotificationsWorker.cancel(this);
+        ModelStore.clearForAccount(login);
+        HttpImageGetter.clearEncodedTextCache(this);
     }
 
     private SharedPreferences getPrefs() {
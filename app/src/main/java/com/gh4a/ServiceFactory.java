@@ -1,24 +1,42 @@
 package com.gh4a;
 
 import android.content.Context;
+import android.os.SystemClock;
 import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
 
 import com.gh4a.utils.ApiHelpers;
+import com.gh4a.utils.CacheOutcomeTracker;
+import com.gh4a.utils.PerformanceMetrics;
+import com.gh4a.utils.RateLimitScheduler;
+import com.gh4a.utils.SingleFlightInterceptor;
 import com.meisolsson.githubsdk.core.ByteArrayResponseConverterFactory;
 import com.meisolsson.githubsdk.core.GitHubPaginationInterceptor;
 import com.meisolsson.githubsdk.core.ServiceGenerator;
 import com.meisolsson.githubsdk.core.StringResponseConverterFactory;
 
 import java.io.File;
-import java.util.HashMap;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
 import java.util.Locale;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.Cache;
 import okhttp3.CacheControl;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.ConnectionPool;
 import okhttp3.Credentials;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
 import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import okhttp3.Request;
 import okhttp3.Response;
 import okhttp3.logging.HttpLoggingInterceptor;
@@ -45,10 +63,17 @@ public class ServiceFactory {
         return response;
     };
 
+    // OkHttp doesn't consult its cache at all for requests with 'no-cache', so use max-age=0
+    // instead. This still forces a network round trip, but allows it to be a conditional
+    // request, which is answered by a (rate limit neutral) 304 if nothing changed.
     private final static Interceptor CACHE_BYPASS_INTERCEPTOR = chain -> {
+        RequestConfig config = chain.request().tag(RequestConfig.class);
+        if (config == null || !config.bypassCache) {
+            return chain.proceed(chain.request());
+        }
         Request request = chain.request()
                 .newBuilder()
-                .addHeader("Cache-Control", "no-cache")
+                .addHeader("Cache-Control", "max-age=0")
                 .build();
         return chain.proceed(request);
     };
@@ -78,7 +103,9 @@ public class ServiceFactory {
         // Github sends max-age=60, which leads to problems when we modify stuff and
         // reload data afterwards. Make sure to constrain max age to 2 seconds to only avoid
         // network calls in cases where the exact same data is loaded from multiple places
-        // at the same time, and use ETags to avoid useless data transfers otherwise.
+        // shortly after each other, and use ETags to avoid useless data transfers otherwise.
+        // Loads of the same data happening at the same time are handled by
+        // SINGLE_FLIGHT_INTERCEPTOR.
         if (origCacheControl.maxAgeSeconds() <= 2) {
             return response;
         }
@@ -104,16 +131,146 @@ public class ServiceFactory {
                 .build();
     };
 
+    private final static Interceptor SINGLE_FLIGHT_INTERCEPTOR = new SingleFlightInterceptor();
+
+    private final static RateLimitScheduler RATE_LIMIT_SCHEDULER = new RateLimitScheduler();
+
+    private final static Interceptor REQUEST_CONFIG_INTERCEPTOR = chain -> {
+        Request original = chain.request();
+        RequestConfig config = original.tag(RequestConfig.class);
+        if (config == null) {
+            return chain.proceed(original);
+        }
+
+        Request.Builder requestBuilder = original.newBuilder()
+                .method(original.method(), original.body());
+
+        String tokenToUse = config.token != null
+                ? config.token : Gh4Application.get().getAuthToken();
+        if (tokenToUse != null) {
+            requestBuilder.header("Authorization", "Token " + tokenToUse);
+        } else {
+            requestBuilder.header("Authorization",
+                    Credentials.basic(BuildConfig.CLIENT_ID, BuildConfig.CLIENT_SECRET));
+        }
+        if (config.pageSize != null && original.url().queryParameterNames().contains("page")) {
+            requestBuilder.url(original.url().newBuilder()
+                    .addQueryParameter("per_page", String.valueOf(config.pageSize))
+                    .build());
+        }
+        if (original.header("Accept") == null) {
+            final String header;
+            if (config.acceptHeader != null) {
+                header = config.acceptHeader;
+            } else {
+                header = DEFAULT_HEADER_ACCEPT;
+            }
+            requestBuilder.addHeader("Accept", header);
+        }
+        requestBuilder.tag(RateLimitScheduler.Priority.class, config.priority);
+
+        return chain.proceed(requestBuilder.build());
+    };
+
     private final static Retrofit.Builder RETROFIT_BUILDER = new Retrofit.Builder()
             .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
             .addConverterFactory(new StringResponseConverterFactory())
             .addConverterFactory(new ByteArrayResponseConverterFactory())
             .addConverterFactory(MoshiConverterFactory.create(ServiceGenerator.moshi));
 
+    private static final String[] WARM_UP_URLS = {
+        "https://api.github.com/",
+        "https://avatars.githubusercontent.com/",
+        "https://github.com/"
+    };
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long CONNECTION_KEEP_ALIVE_MS = 5 * 60 * 1000;
+
+    private static long sLastWarmUpTime;
     private static OkHttpClient sApiHttpClient;
+    private static OkHttpClient sServiceHttpClient;
     private static OkHttpClient sImageHttpClient;
+    private static Retrofit sRetrofit;
+    private static CacheOutcomeTracker sCacheOutcomeTracker;
+
+    // Per-service settings, attached to each request as a tag and evaluated by
+    // the interceptors of the (single) service client
+    private static class RequestConfig {
+        final boolean bypassCache;
+        final String acceptHeader;
+        final String token;
+        final Integer pageSize;
+        final RateLimitScheduler.Priority priority;
+
+        RequestConfig(boolean bypassCache, String acceptHeader, String token,
+                Integer pageSize, RateLimitScheduler.Priority priority) {
+            this.bypassCache = bypassCache;
+            this.acceptHeader = acceptHeader;
+            this.token = token;
+            this.pageSize = pageSize;
+            this.priority = priority;
+        }
+    }
 
-    private final static HashMap<String, Object> sCache = new HashMap<>();
+    // Key of cached services. Lookups reuse a per-thread instance, only services
+    // newly put into the cache get their own copy.
+    private static class ServiceKey {
+        Class<?> serviceClass;
+        boolean bypassCache;
+        String acceptHeader;
+        Integer pageSize;
+        RateLimitScheduler.Priority priority;
+
+        void set(Class<?> serviceClass, boolean bypassCache, String acceptHeader,
+                Integer pageSize, RateLimitScheduler.Priority priority) {
+            this.serviceClass = serviceClass;
+            this.bypassCache = bypassCache;
+            this.acceptHeader = acceptHeader;
+            this.pageSize = pageSize;
+            this.priority = priority;
+        }
+
+        ServiceKey copy() {
+            ServiceKey copy = new ServiceKey();
+            copy.set(serviceClass, bypassCache, acceptHeader, pageSize, priority);
+            return copy;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ServiceKey)) {
+                return false;
+            }
+            ServiceKey other = (ServiceKey) o;
+            return serviceClass == other.serviceClass
+                    && bypassCache == other.bypassCache
+                    && Objects.equals(acceptHeader, other.acceptHeader)
+                    && Objects.equals(pageSize, other.pageSize)
+                    && priority == other.priority;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = serviceClass.hashCode();
+            result = 31 * result + (bypassCache ? 1 : 0);
+            result = 31 * result + (acceptHeader != null ? acceptHeader.hashCode() : 0);
+            result = 31 * result + (pageSize != null ? pageSize : 0);
+            result = 31 * result + priority.ordinal();
+            return result;
+        }
+    }
+
+    // Services are cheap to recreate, so only keep the ones that are used most
+    private final static LruCache<ServiceKey, Object> sCache = new LruCache<>(100);
+    private final static ThreadLocal<ServiceKey> sLookupKey = new ThreadLocal<ServiceKey>() {
+        @Override
+        protected ServiceKey initialValue() {
+            return new ServiceKey();
+        }
+    };
 
     public static <S> S get(Class<S> serviceClass, boolean bypassCache) {
         return get(serviceClass, bypassCache, null, null, null);
@@ -127,76 +284,74 @@ public class ServiceFactory {
         return get(serviceClass, bypassCache, ApiHelpers.MAX_PAGE_SIZE);
     }
 
+    /**
+     * Returns a service whose requests are deferred in favor of foreground requests
+     * when the rate limit budget runs low. To be used for work the user isn't waiting for.
+     */
+    public static <S> S getForBackgroundWork(Class<S> serviceClass, boolean bypassCache,
+            Integer pageSize) {
+        return get(serviceClass, bypassCache, null, null, pageSize,
+                RateLimitScheduler.Priority.LOW);
+    }
+
     public static <S> S get(Class<S> serviceClass, boolean bypassCache, String acceptHeader,
             String token, Integer pageSize) {
-        String key = makeKey(serviceClass, bypassCache, acceptHeader, token, pageSize);
+        return get(serviceClass, bypassCache, acceptHeader, token, pageSize,
+                RateLimitScheduler.Priority.FOREGROUND);
+    }
+
+    private static <S> S get(Class<S> serviceClass, boolean bypassCache, String acceptHeader,
+            String token, Integer pageSize, RateLimitScheduler.Priority priority) {
+        if (token != null) {
+            // Explicit tokens are only used while logging in. Don't keep services bound to
+            // them around; all other services pick up the active account's token per request.
+            return createService(serviceClass,
+                    new RequestConfig(bypassCache, acceptHeader, token, pageSize, priority));
+        }
+        ServiceKey key = sLookupKey.get();
+        key.set(serviceClass, bypassCache, acceptHeader, pageSize, priority);
         S service = (S) sCache.get(key);
         if (service == null) {
-            service = createService(serviceClass, bypassCache, acceptHeader, token, pageSize);
-            sCache.put(key, service);
+            // Creating a service twice in case of a race doesn't hurt
+            service = createService(serviceClass,
+                    new RequestConfig(bypassCache, acceptHeader, null, pageSize, priority));
+            sCache.put(key.copy(), service);
         }
         return service;
     }
 
-    private static String makeKey(Class<?> serviceClass, boolean bypassCache,
-            String acceptHeader, String token, Integer pageSize) {
-        return String.format(Locale.US, "%s-%d-%s-%s-%d",
-                serviceClass.getSimpleName(), bypassCache ? 1 : 0,
-                acceptHeader != null ? acceptHeader : "",
-                token != null ? token : "", pageSize != null ? pageSize : 0);
+    private static <S> S createService(Class<S> serviceClass, final RequestConfig config) {
+        Retrofit retrofit = sRetrofit.newBuilder()
+                .callFactory(request -> sServiceHttpClient.newCall(request.newBuilder()
+                        .tag(RequestConfig.class, config)
+                        .build()))
+                .build();
+        return retrofit.create(serviceClass);
     }
 
-    private static <S> S createService(Class<S> serviceClass, final boolean bypassCache,
-            final String acceptHeader, final String token, final Integer pageSize) {
+    private static OkHttpClient createServiceHttpClient() {
         OkHttpClient.Builder clientBuilder = sApiHttpClient.newBuilder()
                 .addInterceptor(PAGINATION_INTERCEPTOR)
                 .addNetworkInterceptor(ETAG_WORKAROUND_INTERCEPTOR)
                 .addNetworkInterceptor(CACHE_MAX_AGE_INTERCEPTOR)
-                .addInterceptor(chain -> {
-                    Request original = chain.request();
-
-                    Request.Builder requestBuilder = original.newBuilder()
-                            .method(original.method(), original.body());
-
-                    String tokenToUse = token != null
-                            ? token : Gh4Application.get().getAuthToken();
-                    if (tokenToUse != null) {
-                        requestBuilder.header("Authorization", "Token " + tokenToUse);
-                    } else {
-                        requestBuilder.header("Authorization",
-                                Credentials.basic(BuildConfig.CLIENT_ID, BuildConfig.CLIENT_SECRET));
-                    }
-                    if (pageSize != null && original.url().queryParameterNames().contains("page")) {
-                        requestBuilder.url(original.url().newBuilder()
-                                .addQueryParameter("per_page", String.valueOf(pageSize))
-                                .build());
-                    }
-                    if (original.header("Accept") == null) {
-                        final String header;
-                        if (acceptHeader != null) {
-                            header = acceptHeader;
-                        } else {
-                            header = DEFAULT_HEADER_ACCEPT;
-                        }
-                        requestBuilder.addHeader("Accept", header);
-                    }
-
-                    return chain.proceed(requestBuilder.build());
-                });
+                .addInterceptor(REQUEST_CONFIG_INTERCEPTOR);
 
         if (BuildConfig.DEBUG) {
             clientBuilder.addInterceptor(LOGGING_INTERCEPTOR);
             clientBuilder.addInterceptor(CACHE_STATUS_INTERCEPTOR);
         }
-        if (bypassCache) {
-            clientBuilder.addInterceptor(CACHE_BYPASS_INTERCEPTOR);
+        clientBuilder.addInterceptor(CACHE_BYPASS_INTERCEPTOR);
+        // Requests are delayed or deferred before they can be coalesced, so that a foreground
+        // request never waits for (or fails with) a deferred low priority one
+        clientBuilder.addInterceptor(RATE_LIMIT_SCHEDULER);
+        clientBuilder.addInterceptor(SINGLE_FLIGHT_INTERCEPTOR);
+        if (PerformanceMetrics.ENABLED) {
+            clientBuilder.addNetworkInterceptor(sCacheOutcomeTracker.refetchInterceptor);
+            clientBuilder.addInterceptor(sCacheOutcomeTracker.outcomeInterceptor);
+            clientBuilder.addInterceptor(PerformanceMetrics.INTERCEPTOR);
         }
 
-        Retrofit retrofit = RETROFIT_BUILDER
-                .baseUrl("https://api.github.com")
-                .client(clientBuilder.build())
-                .build();
-        return retrofit.create(serviceClass);
+        return clientBuilder.build();
     }
 
     public static OkHttpClient.Builder getHttpClientBuilder() {
@@ -207,13 +362,116 @@ public class ServiceFactory {
         return sImageHttpClient;
     }
 
+    public static RateLimitScheduler getRateLimitScheduler() {
+        return RATE_LIMIT_SCHEDULER;
+    }
+
+    public static CacheOutcomeTracker getCacheOutcomeTracker() {
+        return sCacheOutcomeTracker;
+    }
+
+    /**
+     * Sets up connections (DNS, TCP and TLS handshakes) to the hosts we talk to, so the
+     * first requests to them don't need to do that.
+     */
+    public static void warmUpConnections() {
+        long now = SystemClock.elapsedRealtime();
+        if (sLastWarmUpTime != 0 && now - sLastWarmUpTime < CONNECTION_KEEP_ALIVE_MS) {
+            return;
+        }
+        sLastWarmUpTime = now;
+
+        OkHttpClient.Builder clientBuilder = sApiHttpClient.newBuilder()
+                .cache(null)
+                .followRedirects(false);
+        if (BuildConfig.DEBUG) {
+            clientBuilder.eventListenerFactory(call -> new HandshakeTimingListener());
+        }
+        OkHttpClient client = clientBuilder.build();
+        for (String url : WARM_UP_URLS) {
+            Request request = new Request.Builder()
+                    .url(url)
+                    .head()
+                    .build();
+            client.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    if (BuildConfig.DEBUG) {
+                        Log.d("OkHttp", "Warming up connection to " + url + " failed", e);
+                    }
+                }
+
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) {
+                    response.close();
+                }
+            });
+        }
+    }
+
+    // Only used in debug builds
+    private static class HandshakeTimingListener extends EventListener {
+        private long mCallStart;
+        private long mConnectStart;
+        private long mSecureConnectStart;
+        private long mSecureConnectEnd;
+
+        @Override
+        public void callStart(@NonNull Call call) {
+            mCallStart = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void connectStart(@NonNull Call call, @NonNull InetSocketAddress address,
+                @NonNull Proxy proxy) {
+            mConnectStart = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void secureConnectStart(@NonNull Call call) {
+            mSecureConnectStart = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void secureConnectEnd(@NonNull Call call, Handshake handshake) {
+            mSecureConnectEnd = SystemClock.elapsedRealtime();
+        }
+
+        @Override
+        public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress address,
+                @NonNull Proxy proxy, Protocol protocol) {
+            long end = SystemClock.elapsedRealtime();
+            Log.d("OkHttp", String.format(Locale.US,
+                    "Connected to %s via %s: DNS %d ms, TCP %d ms, TLS %d ms, total %d ms",
+                    call.request().url().host(), protocol,
+                    mConnectStart - mCallStart, mSecureConnectStart - mConnectStart,
+                    mSecureConnectEnd - mSecureConnectStart, end - mCallStart));
+        }
+    }
+
     static void initClient(Context context) {
+        if (PerformanceMetrics.ENABLED) {
+            sCacheOutcomeTracker = new CacheOutcomeTracker();
+        }
         int twentyMB = 20 * 1024 * 1024;
+        Dispatcher dispatcher = new Dispatcher();
+        // Leave room for parallel page loads (see ApiHelpers.PageIterator) next to other requests
+        dispatcher.setMaxRequestsPerHost(2 * ApiHelpers.PageIterator.DEFAULT_PAGE_CONCURRENCY);
+        // All clients are derived from this one, so they all share the dispatcher
+        // and the connection pool
         sApiHttpClient = new OkHttpClient.Builder()
                 .cache(new Cache(new File(context.getCacheDir(), "api-http"), twentyMB))
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS,
+                        CONNECTION_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS))
                 .build();
         sImageHttpClient = sApiHttpClient.newBuilder()
                 .cache(new Cache(new File(context.getCacheDir(), "image-http"), twentyMB))
                 .build();
+        sServiceHttpClient = createServiceHttpClient();
+        sRetrofit = RETROFIT_BUILDER
+                .baseUrl("https://api.github.com")
+                .client(sServiceHttpClient)
+                .build();
     }
 }
\ No newline at end of file
@@ -51,6 +51,7 @@ import com.gh4a.BaseActivity;
 import com.gh4a.Gh4Application;
 import com.gh4a.R;
 import com.gh4a.ServiceFactory;
+import com.gh4a.db.ModelStore;
 import com.gh4a.fragment.ConfirmationDialogFragment;
 import com.gh4a.fragment.IssueFragment;
 import com.gh4a.utils.ApiHelpers;
@@ -68,6 +69,8 @@ import com.meisolsson.githubsdk.service.issues.IssueService;
 import java.util.List;
 import java.util.Locale;
 
+import io.reactivex.Single;
+
 public class IssueActivity extends BaseActivity implements
         View.OnClickListener, ConfirmationDialogFragment.Callback {
     public static Intent makeIntent(Context context, Issue issue) {
@@ -400,10 +403,16 @@ public class IssueActivity extends BaseActivity implements
 
     private void loadIssue(boolean force) {
         IssueService service = ServiceFactory.get(IssueService.class, force);
-        service.getIssue(mRepoOwner, mRepoName, mIssueNumber)
-                .map(ApiHelpers::throwOnFailure)
-                .compose(makeLoaderSingle(ID_LOADER_ISSUE, force))
+        Single<Issue> issueSingle = service.getIssue(mRepoOwner, mRepoName, mIssueNumber)
+                .map(ApiHelpers::throwOnFailure);
+        ModelStore.loadWithStoredValue(ModelStore.TYPE_ISSUE,
+                        mRepoOwner + "/" + mRepoName + "#" + mIssueNumber, Issue.class, issueSingle)
+                .compose(makeLoaderObservable(ID_LOADER_ISSUE, force))
                 .subscribe(result -> {
+                    if (mIssue != null) {
+                        // Fresh data replacing the stored copy, make sure the fragment uses it
+                        removeFragment();
+                    }
                     mIssue = result;
                     showUiIfDone();
                     supportInvalidateOptionsMenu();
@@ -411,15 +420,31 @@ public class IssueActivity extends BaseActivity implements
     }
 
     private void loadCollaboratorStatus(boolean force) {
-        SingleFactory.isAppUserRepoCollaborator(mRepoOwner, mRepoName, force)
-                .compose(makeLoaderSingle(ID_LOADER_COLLABORATOR_STATUS, force))
+        Single<Boolean> collaboratorSingle =
+                SingleFactory.isAppUserRepoCollaborator(mRepoOwner, mRepoName, force);
+        ModelStore.loadWithStoredValue(ModelStore.TYPE_COLLABORATOR_STATUS,
+                        mRepoOwner + "/" + mRepoName, Boolean.class, collaboratorSingle)
+                .compose(makeLoaderObservable(ID_LOADER_COLLABORATOR_STATUS, force))
                 .subscribe(result -> {
+                    if (mIsCollaborator != null) {
+                        removeFragment();
+                    }
                     mIsCollaborator = result;
                     showUiIfDone();
                     supportInvalidateOptionsMenu();
                 }, this::handleLoadFailure);
     }
 
+    private void removeFragment() {
+        if (mFragment != null) {
+            // Remove it right away, so showUiIfDone() doesn't pick it up again
+            getSupportFragmentManager().beginTransaction()
+                    .remove(mFragment)
+                    .commitNowAllowingStateLoss();
+            setFragment(null);
+        }
+    }
+
     @Nullable
     @Override
     protected Uri getActivityUri() {
@@ -37,6 +37,7 @@ import com.gh4a.BaseFragmentPagerActivity;
 import com.gh4a.Gh4Application;
 import com.gh4a.R;
 import com.gh4a.ServiceFactory;
+import com.gh4a.db.ModelStore;
 import com.gh4a.fragment.CommitCompareFragment;
 import com.gh4a.fragment.ConfirmationDialogFragment;
 import com.gh4a.fragment.PullRequestConversationFragment;
@@ -77,6 +78,7 @@ import androidx.appcompat.view.ContextThemeWrapper;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
 import androidx.fragment.app.DialogFragment;
 import androidx.fragment.app.Fragment;
+import io.reactivex.Observable;
 import io.reactivex.Single;
 import io.reactivex.schedulers.Schedulers;
 
@@ -512,16 +514,28 @@ public class PullRequestActivity extends BaseFragmentPagerActivity implements
         IssueService issueService = ServiceFactory.get(IssueService.class, force);
 
         Single<PullRequest> prSingle = prService.getPullRequest(mRepoOwner, mRepoName, mPullRequestNumber)
-                .map(ApiHelpers::throwOnFailure)
-                .subscribeOn(Schedulers.io());
+                .map(ApiHelpers::throwOnFailure);
         Single<Issue> issueSingle = issueService.getIssue(mRepoOwner, mRepoName, mPullRequestNumber)
-                .map(ApiHelpers::throwOnFailure)
+                .map(ApiHelpers::throwOnFailure);
+        Single<Boolean> isCollaboratorSingle = SingleFactory.isAppUserRepoCollaborator(mRepoOwner, mRepoName, force);
+
+        // Show the stored models right away, each of them is replaced once it was
+        // fetched again and turned out to have changed
+        String repoKey = mRepoOwner + "/" + mRepoName;
+        String key = repoKey + "#" + mPullRequestNumber;
+        Observable<Issue> issueObservable = ModelStore.loadWithStoredValue(
+                ModelStore.TYPE_ISSUE, key, Issue.class, issueSingle)
+                .subscribeOn(Schedulers.io());
+        Observable<PullRequest> prObservable = ModelStore.loadWithStoredValue(
+                ModelStore.TYPE_PULL_REQUEST, key, PullRequest.class, prSingle)
                 .subscribeOn(Schedulers.io());
-        Single<Boolean> isCollaboratorSingle = SingleFactory.isAppUserRepoCollaborator(mRepoOwner, mRepoName, force)
+        Observable<Boolean> isCollaboratorObservable = ModelStore.loadWithStoredValue(
+                ModelStore.TYPE_COLLABORATOR_STATUS, repoKey, Boolean.class, isCollaboratorSingle)
                 .subscribeOn(Schedulers.io());
 
-        Single.zip(issueSingle, prSingle, isCollaboratorSingle, Triplet::create)
-                .compose(makeLoaderSingle(0, force))
+        Observable.combineLatest(issueObservable, prObservable, isCollaboratorObservable,
+                        Triplet::create)
+                .compose(makeLoaderObservable(0, force))
                 .subscribe(result -> {
                     mIssue = result.first;
                     mPullRequest = result.second;
@@ -26,6 +26,7 @@ import com.gh4a.BaseFragmentPagerActivity;
 import com.gh4a.R;
 import com.gh4a.ServiceFactory;
 import com.gh4a.db.BookmarksProvider;
+import com.gh4a.db.ModelStore;
 import com.gh4a.fragment.CommitListFragment;
 import com.gh4a.fragment.ContentListContainerFragment;
 import com.gh4a.fragment.RepositoryEventListFragment;
@@ -360,10 +361,16 @@ public class RepositoryActivity extends BaseFragmentPagerActivity implements
         // same ETag even if some fields are changed (like the open issues count and the watchers count)
         boolean skipCache = true;
         RepositoryService service = ServiceFactory.get(RepositoryService.class, skipCache);
-        service.getRepository(mRepoOwner, mRepoName)
-                .map(ApiHelpers::throwOnFailure)
-                .compose(makeLoaderSingle(ID_LOADER_REPO, skipCache))
+        Single<Repository> repoSingle = service.getRepository(mRepoOwner, mRepoName)
+                .map(ApiHelpers::throwOnFailure);
+        ModelStore.loadWithStoredValue(ModelStore.TYPE_REPOSITORY,
+                        mRepoOwner + "/" + mRepoName, Repository.class, repoSingle)
+                .compose(makeLoaderObservable(ID_LOADER_REPO, skipCache))
                 .subscribe(result -> {
+                    if (mRepository != null) {
+                        // Fresh data replacing the stored copy, make sure the overview uses it
+                        mRepositoryFragment = null;
+                    }
                     mRepository = result;
                     updateTitle();
                     invalidateTabs();
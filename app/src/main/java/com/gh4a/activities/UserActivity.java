@@ -14,6 +14,7 @@ import com.gh4a.BaseFragmentPagerActivity;
 import com.gh4a.R;
 import com.gh4a.ServiceFactory;
 import com.gh4a.db.BookmarksProvider;
+import com.gh4a.db.ModelStore;
 import com.gh4a.fragment.PublicEventListFragment;
 import com.gh4a.fragment.UserFragment;
 import com.gh4a.utils.ApiHelpers;
@@ -23,6 +24,10 @@ import com.meisolsson.githubsdk.model.User;
 import com.meisolsson.githubsdk.model.UserType;
 import com.meisolsson.githubsdk.service.users.UserService;
 
+import java.util.Locale;
+
+import io.reactivex.Single;
+
 public class UserActivity extends BaseFragmentPagerActivity {
     public static Intent makeIntent(Context context, User user) {
         if (user != null && user.type() == UserType.Mannequin) {
@@ -106,6 +111,11 @@ public class UserActivity extends BaseFragmentPagerActivity {
         }
     }
 
+    @Override
+    protected boolean fragmentNeedsRefresh(Fragment fragment) {
+        return fragment instanceof UserFragment && mUserFragment == null;
+    }
+
     @Override
     protected void onFragmentDestroyed(Fragment f) {
         if (f == mUserFragment) {
@@ -175,10 +185,16 @@ public class UserActivity extends BaseFragmentPagerActivity {
 
     private void loadUser(boolean force) {
         UserService service = ServiceFactory.get(UserService.class, force);
-        service.getUser(mUserLogin)
-                .map(ApiHelpers::throwOnFailure)
-                .compose(makeLoaderSingle(ID_LOADER_USER, force))
+        Single<User> userSingle = service.getUser(mUserLogin)
+                .map(ApiHelpers::throwOnFailure);
+        ModelStore.loadWithStoredValue(ModelStore.TYPE_USER,
+                        mUserLogin.toLowerCase(Locale.US), User.class, userSingle)
+                .compose(makeLoaderObservable(ID_LOADER_USER, force))
                 .subscribe(result -> {
+                    if (mUser != null) {
+                        // Fresh data replacing the stored copy, make sure the overview uses it
+                        mUserFragment = null;
+                    }
                     mUser = result;
                     invalidateTabs();
                     setContentShown(true);
@@ -46,6 +46,7 @@ import com.gh4a.fragment.SettingsFragment;
 import com.gh4a.utils.FileUtils;
 import com.gh4a.utils.HtmlUtils;
 import com.gh4a.utils.IntentUtils;
+import com.gh4a.utils.PerformanceMetrics;
 import com.gh4a.utils.StringUtils;
 import com.gh4a.utils.UiUtils;
 import com.gh4a.widget.FindActionModeCallback;
@@ -67,6 +68,7 @@ public abstract class WebViewerActivity extends BaseActivity implements
     private boolean mRequiresNativeClient;
     private boolean mPageFinished;
     private boolean mRenderingDone;
+    private long mRenderingStartTime;
     private final Handler mHandler = new Handler();
 
     public static final String DARK_CSS_THEME = "dark";
@@ -313,6 +315,7 @@ public abstract class WebViewerActivity extends BaseActivity implements
         if (mRequiresNativeClient) {
             mWebView.addJavascriptInterface(new NativeClientJavascriptInterface(), "NativeClient");
         }
+        mRenderingStartTime = System.nanoTime();
         mWebView.loadDataWithBaseURL("file:///android_asset/", html, null, "utf-8", null);
         mHasData = true;
         supportInvalidateOptionsMenu();
@@ -478,6 +481,8 @@ public abstract class WebViewerActivity extends BaseActivity implements
         @JavascriptInterface
         public void onRenderingDone() {
             mHandler.post(() -> {
+                PerformanceMetrics.recordTiming(PerformanceMetrics.TIMING_WEBVIEW_RENDERING,
+                        WebViewerActivity.this.getClass().getSimpleName(), mRenderingStartTime);
                 mRenderingDone = true;
                 showContentIfDone();
             });
@@ -111,6 +111,7 @@ public class HomeActivity extends BaseFragmentPagerActivity implements
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
+        ServiceFactory.warmUpConnections();
         mUserLogin = Gh4Application.get().getAuthLogin();
         if (savedInstanceState != null) {
             mSelectedFactoryId = savedInstanceState.getInt(STATE_KEY_FACTORY_ITEM);
@@ -46,6 +46,7 @@ import com.meisolsson.githubsdk.model.git.GitComment;
 import com.meisolsson.githubsdk.model.request.ReactionRequest;
 import com.meisolsson.githubsdk.service.reactions.ReactionService;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -136,6 +137,18 @@ public class CommitCommentAdapter extends RootAdapter<GitComment, CommitCommentA
         mReactionDetailsCache.clear();
     }
 
+    @Override
+    public void addAll(Collection<GitComment> objects) {
+        super.addAll(objects);
+        if (objects == null) {
+            return;
+        }
+        // Encode comment bodies ahead of binding, so scrolling doesn't need to do it
+        for (GitComment comment : objects) {
+            mImageGetter.encodeInBackground(mContext, comment.id(), comment.bodyHtml());
+        }
+    }
+
     @Override
     public void onClick(View v) {
         if (v.getId() == R.id.iv_gravatar) {
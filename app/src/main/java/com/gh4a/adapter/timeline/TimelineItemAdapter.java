@@ -18,6 +18,7 @@ import com.gh4a.widget.ReactionBar;
 import com.meisolsson.githubsdk.model.GitHubCommentBase;
 import com.meisolsson.githubsdk.model.Reaction;
 import com.meisolsson.githubsdk.model.Reactions;
+import com.meisolsson.githubsdk.model.Review;
 import com.meisolsson.githubsdk.model.User;
 
 import java.util.Collection;
@@ -210,6 +211,19 @@ public class TimelineItemAdapter
     public void addAll(Collection<TimelineItem> objects) {
         mDontClearCacheOnClear = false;
         super.addAll(objects);
+        if (objects == null) {
+            return;
+        }
+        // Encode comment bodies ahead of binding, so scrolling doesn't need to do it
+        for (TimelineItem item : objects) {
+            if (item instanceof TimelineItem.TimelineComment) {
+                GitHubCommentBase comment = ((TimelineItem.TimelineComment) item).comment();
+                mImageGetter.encodeInBackground(mContext, comment.id(), comment.bodyHtml());
+            } else if (item instanceof TimelineItem.TimelineReview) {
+                Review review = ((TimelineItem.TimelineReview) item).review();
+                mImageGetter.encodeInBackground(mContext, review.id(), review.bodyHtml());
+            }
+        }
     }
 
     @Override
@@ -115,7 +115,7 @@ public class BookmarksProvider extends ContentProvider {
 
     @Override
     public boolean onCreate() {
-        mDbHelper = new DbHelper(getContext());
+        mDbHelper = DbHelper.getInstance(getContext());
         return true;
     }
 
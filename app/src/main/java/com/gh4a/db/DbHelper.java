@@ -11,12 +11,26 @@ import java.net.URISyntaxException;
 
 public class DbHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "gh4adb.db";
-    private static final int DATABASE_VERSION = 4;
+    private static final int DATABASE_VERSION = 5;
 
     static final String BOOKMARKS_TABLE = "bookmarks";
     static final String SUGGESTIONS_TABLE = "suggestions";
+    static final String MODELS_TABLE = "models";
 
-    public DbHelper(Context context) {
+    private static DbHelper sInstance;
+
+    /**
+     * Returns the helper shared by all users of the database, so that there's only a single
+     * connection (and upgrade path) for the database file.
+     */
+    public static synchronized DbHelper getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DbHelper(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private DbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
@@ -24,6 +38,7 @@ public class DbHelper extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db) {
         createBookmarksTable(db, BOOKMARKS_TABLE);
         createSuggestionsTable(db);
+        createModelsTable(db);
     }
 
     @Override
@@ -37,6 +52,9 @@ public class DbHelper extends SQLiteOpenHelper {
         if (oldVersion < 4) {
             addBookmarksOrderIdColumn(db);
         }
+        if (oldVersion < 5) {
+            createModelsTable(db);
+        }
     }
 
     private void createBookmarksTable(SQLiteDatabase db, String tableName) {
@@ -58,6 +76,17 @@ public class DbHelper extends SQLiteOpenHelper {
                 + "unique (type, suggestion) on conflict replace);");
     }
 
+    private void createModelsTable(SQLiteDatabase db) {
+        db.execSQL("create table " + MODELS_TABLE + " ("
+                + "_id integer primary key autoincrement, "
+                + "type integer not null, "
+                + "account text not null, "
+                + "model_key text not null, "
+                + "json text not null, "
+                + "updated long not null, "
+                + "unique (type, account, model_key) on conflict replace);");
+    }
+
     private void updateBookmarkUris(SQLiteDatabase db) {
         Cursor c = db.query(BOOKMARKS_TABLE, new String[] { "_id", "uri", "extra_data" },
                 null, null, null, null, null);
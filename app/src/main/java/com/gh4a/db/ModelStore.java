@@ -0,0 +1,148 @@
+package com.gh4a.db;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import com.gh4a.Gh4Application;
+import com.gh4a.ServiceFactory;
+import com.gh4a.utils.RateLimitScheduler;
+import com.meisolsson.githubsdk.core.ServiceGenerator;
+
+import java.io.IOException;
+
+import io.reactivex.Observable;
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Keeps the last known version of API models (repositories, users, issues, pull requests)
+ * and the collaborator status for repositories in the database,
+ * so screens can show them immediately (or when offline) while fresh data is loaded.
+ */
+public class ModelStore {
+    private static final String TAG = "ModelStore";
+
+    public static final int TYPE_REPOSITORY = 0;
+    public static final int TYPE_USER = 1;
+    public static final int TYPE_ISSUE = 2;
+    public static final int TYPE_PULL_REQUEST = 3;
+    public static final int TYPE_COLLABORATOR_STATUS = 4;
+
+    private static final int MAX_ENTRIES = 500;
+    private static final int SAVES_PER_TRIM = 50;
+
+    private static int sSavesSinceTrim;
+
+    /**
+     * Emits the stored model for the given key (if any) first, followed by the result of
+     * the network request if it differs from the stored model. The network result is stored
+     * for later use. If there is a stored model, network errors are ignored, so the stored
+     * model keeps being shown when being offline. The same goes for an exhausted rate limit
+     * budget, in which case the network request is skipped altogether.
+     */
+    public static <T> Observable<T> loadWithStoredValue(int type, String key, Class<T> modelClass,
+            Single<T> networkSingle) {
+        return Observable.defer(() -> {
+            T stored = load(type, key, modelClass);
+            Observable<T> network = networkSingle
+                    .doOnSuccess(result -> save(type, key, modelClass, result))
+                    .toObservable();
+            if (stored == null) {
+                return network;
+            }
+            if (isRateLimited()) {
+                // The request would fail anyway, so stick to the stored model
+                return Observable.just(stored);
+            }
+            return network
+                    .filter(result -> !result.equals(stored))
+                    .onErrorResumeNext(error -> error instanceof IOException
+                            ? Observable.empty() : Observable.error(error))
+                    .startWith(stored);
+        });
+    }
+
+    public static <T> T load(int type, String key, Class<T> modelClass) {
+        final String json;
+        try (Cursor c = getDatabase().query(DbHelper.MODELS_TABLE, new String[] { "json" },
+                "type = ? and account = ? and model_key = ?",
+                new String[] { String.valueOf(type), getAccount(), key },
+                null, null, null)) {
+            if (!c.moveToFirst()) {
+                return null;
+            }
+            json = c.getString(0);
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Could not load stored model", e);
+            return null;
+        }
+        try {
+            return ServiceGenerator.moshi.adapter(modelClass).fromJson(json);
+        } catch (IOException | RuntimeException e) {
+            // Most likely stored by an older version with a different model layout
+            Log.d(TAG, "Could not parse stored model", e);
+            return null;
+        }
+    }
+
+    public static <T> void save(int type, String key, Class<T> modelClass, T model) {
+        ContentValues cv = new ContentValues();
+        cv.put("type", type);
+        cv.put("account", getAccount());
+        cv.put("model_key", key);
+        cv.put("json", ServiceGenerator.moshi.adapter(modelClass).toJson(model));
+        cv.put("updated", System.currentTimeMillis());
+
+        try {
+            SQLiteDatabase db = getDatabase();
+            db.insert(DbHelper.MODELS_TABLE, null, cv);
+            if (shouldTrim()) {
+                db.execSQL("delete from " + DbHelper.MODELS_TABLE + " where _id not in "
+                        + "(select _id from " + DbHelper.MODELS_TABLE
+                        + " order by updated desc limit " + MAX_ENTRIES + ")");
+            }
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Could not store model", e);
+        }
+    }
+
+    /**
+     * Deletes all models stored for the given account in the background.
+     */
+    public static void clearForAccount(String login) {
+        Schedulers.io().scheduleDirect(() -> {
+            try {
+                getDatabase().delete(DbHelper.MODELS_TABLE, "account = ?",
+                        new String[] { login });
+            } catch (SQLiteException e) {
+                Log.w(TAG, "Could not delete stored models", e);
+            }
+        });
+    }
+
+    private static boolean isRateLimited() {
+        RateLimitScheduler.Budget budget = ServiceFactory.getRateLimitScheduler().getCurrentBudget();
+        return budget != null && budget.isExhausted();
+    }
+
+    private static synchronized boolean shouldTrim() {
+        if (++sSavesSinceTrim < SAVES_PER_TRIM) {
+            return false;
+        }
+        sSavesSinceTrim = 0;
+        return true;
+    }
+
+    private static String getAccount() {
+        String login = Gh4Application.get().getAuthLogin();
+        return login != null ? login : "";
+    }
+
+    private static SQLiteDatabase getDatabase() {
+        // Shared with the content providers
+        return DbHelper.getInstance(Gh4Application.get()).getWritableDatabase();
+    }
+}
@@ -47,7 +47,7 @@ public class SuggestionsProvider extends ContentProvider {
 
     @Override
     public boolean onCreate() {
-        mDbHelper = new DbHelper(getContext());
+        mDbHelper = DbHelper.getInstance(getContext());
         return true;
     }
 
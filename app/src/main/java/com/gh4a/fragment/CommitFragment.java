@@ -65,12 +65,18 @@ public class CommitFragment extends LoadingFragmentBase implements OnClickListen
         void onCommentsUpdated();
     }
 
+    private static final int[] FILE_CONTAINER_IDS = {
+        R.id.ll_changed, R.id.ll_added, R.id.ll_renamed, R.id.ll_deleted
+    };
+
     private String mRepoOwner;
     private String mRepoName;
     private String mObjectSha;
     private Commit mCommit;
     private List<GitComment> mComments;
     protected View mContentView;
+    private int mAddedFiles, mChangedFiles, mRenamedFiles, mDeletedFiles;
+    private int mTotalAdditions, mTotalDeletions;
 
     private final ActivityResultLauncher<Intent> mDiffViewerLauncher = registerForActivityResult(
             new ActivityResultContracts.StartActivityForResult(),
@@ -183,17 +189,31 @@ public class CommitFragment extends LoadingFragmentBase implements OnClickListen
     }
 
     protected void fillStats(List<GitHubFile> files, List<? extends PositionalCommentBase> comments) {
+        clearStats();
+        appendStats(files, 0, comments);
+    }
+
+    protected void clearStats() {
+        for (int id : FILE_CONTAINER_IDS) {
+            ViewGroup container = mContentView.findViewById(id);
+            container.removeAllViews();
+        }
+        mAddedFiles = mChangedFiles = mRenamedFiles = mDeletedFiles = 0;
+        mTotalAdditions = mTotalDeletions = 0;
+    }
+
+    /**
+     * Adds views for the files starting at the given index to the ones added before.
+     * If comments are null, comment counts can be filled in later via
+     * {@link #updateCommentCounts(List)}.
+     */
+    protected void appendStats(List<GitHubFile> files, int start,
+            List<? extends PositionalCommentBase> comments) {
         LinearLayout llChanged = mContentView.findViewById(R.id.ll_changed);
         LinearLayout llAdded = mContentView.findViewById(R.id.ll_added);
         LinearLayout llRenamed = mContentView.findViewById(R.id.ll_renamed);
         LinearLayout llDeleted = mContentView.findViewById(R.id.ll_deleted);
-        llChanged.removeAllViews();
-        llAdded.removeAllViews();
-        llRenamed.removeAllViews();
-        llDeleted.removeAllViews();
 
-        int addedFiles = 0, changedFiles = 0, renamedFiles = 0, deletedFiles = 0;
-        int totalAdditions = 0, totalDeletions = 0;
         int filesCount = files != null ? files.size() : 0;
         int highlightColor = UiUtils.resolveColor(getActivity(), android.R.attr.textColorPrimary);
         ForegroundColorSpan additionsSpan = new ForegroundColorSpan(
@@ -201,60 +221,72 @@ public class CommitFragment extends LoadingFragmentBase implements OnClickListen
         ForegroundColorSpan deletionsSpan = new ForegroundColorSpan(
                 UiUtils.resolveColor(getActivity(), R.attr.colorCommitDeletion));
 
-        for (int i = 0; i < filesCount; i++) {
+        for (int i = start; i < filesCount; i++) {
             GitHubFile file = files.get(i);
             final LinearLayout parent;
 
             switch (file.status()) {
                 case "added":
                     parent = llAdded;
-                    addedFiles++;
+                    mAddedFiles++;
                     break;
                 case "modified":
                     parent = llChanged;
-                    changedFiles++;
+                    mChangedFiles++;
                     break;
                 case "renamed":
                     parent = llRenamed;
-                    renamedFiles++;
+                    mRenamedFiles++;
                     break;
                 case "removed":
                     parent = llDeleted;
-                    deletedFiles++;
+                    mDeletedFiles++;
                     break;
                 default:
                     continue;
             }
 
-            totalAdditions += file.additions();
-            totalDeletions += file.deletions();
+            mTotalAdditions += file.additions();
+            mTotalDeletions += file.deletions();
 
             View fileView = getLayoutInflater().inflate(R.layout.commit_filename, parent, false);
             TextView fileNameView = fileView.findViewById(R.id.filename);
 
             fillFileName(fileNameView, file);
             fillFileStats(fileView, file, additionsSpan, deletionsSpan);
-            fillFileCommentsCount(fileView, file, comments);
+            if (comments != null) {
+                fillFileCommentsCount(fileView, file, comments);
+            }
 
+            fileView.setTag(file);
             if (file.patch() != null ||
                     (parent != llDeleted && FileUtils.isImage(file.filename()))) {
                 fileNameView.setTextColor(highlightColor);
                 fileView.setOnClickListener(this);
-                fileView.setTag(file);
             }
 
             parent.addView(fileView);
         }
 
-        adjustVisibility(R.id.card_added, addedFiles);
-        adjustVisibility(R.id.card_changed, changedFiles);
-        adjustVisibility(R.id.card_renamed, renamedFiles);
-        adjustVisibility(R.id.card_deleted, deletedFiles);
+        adjustVisibility(R.id.card_added, mAddedFiles);
+        adjustVisibility(R.id.card_changed, mChangedFiles);
+        adjustVisibility(R.id.card_renamed, mRenamedFiles);
+        adjustVisibility(R.id.card_deleted, mDeletedFiles);
 
         TextView tvSummary = mContentView.findViewById(R.id.tv_desc);
         tvSummary.setText(getString(R.string.commit_summary,
-                addedFiles + changedFiles + renamedFiles + deletedFiles,
-                totalAdditions, totalDeletions));
+                mAddedFiles + mChangedFiles + mRenamedFiles + mDeletedFiles,
+                mTotalAdditions, mTotalDeletions));
+    }
+
+    protected void updateCommentCounts(List<? extends PositionalCommentBase> comments) {
+        for (int id : FILE_CONTAINER_IDS) {
+            ViewGroup container = mContentView.findViewById(id);
+            for (int i = 0; i < container.getChildCount(); i++) {
+                View fileView = container.getChildAt(i);
+                fillFileCommentsCount(fileView, (GitHubFile) fileView.getTag(), comments);
+            }
+        }
     }
 
     private void fillFileName(TextView fileNameView, GitHubFile file) {
@@ -293,10 +325,12 @@ public class CommitFragment extends LoadingFragmentBase implements OnClickListen
                 commentCount++;
             }
         }
+        TextView commentView = fileView.findViewById(R.id.comments);
         if (commentCount > 0) {
-            TextView commentView = fileView.findViewById(R.id.comments);
             commentView.setText(String.valueOf(commentCount));
             commentView.setVisibility(View.VISIBLE);
+        } else {
+            commentView.setVisibility(View.GONE);
         }
     }
 
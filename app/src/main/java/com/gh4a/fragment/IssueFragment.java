@@ -22,7 +22,6 @@ import com.meisolsson.githubsdk.service.issues.IssueTimelineService;
 import java.util.List;
 
 import io.reactivex.Single;
-import io.reactivex.schedulers.Schedulers;
 import retrofit2.Response;
 
 public class IssueFragment extends IssueFragmentBase {
@@ -76,9 +75,9 @@ public class IssueFragment extends IssueFragmentBase {
 
         return ApiHelpers.PageIterator
                 .toSingle(page -> timelineService.getTimeline(mRepoOwner, mRepoName, issueNumber, page))
+                .compose(RxUtils::loadForProcessing)
                 .compose(RxUtils.filter(event -> INTERESTING_EVENTS.contains(event.event())))
-                .compose(RxUtils.mapList(TimelineItem::fromIssueEvent))
-                .subscribeOn(Schedulers.io());
+                .compose(RxUtils.mapList(TimelineItem::fromIssueEvent));
     }
 
     @Override
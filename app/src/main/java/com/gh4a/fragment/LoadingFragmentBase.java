@@ -12,13 +12,17 @@ import android.view.ViewGroup;
 
 import com.gh4a.BaseActivity;
 import com.gh4a.R;
+import com.gh4a.utils.PerformanceMetrics;
 import com.gh4a.utils.RxUtils;
 import com.gh4a.utils.UiUtils;
 import com.gh4a.widget.SwipeRefreshLayout;
 import com.philosophicalhacker.lib.RxLoader;
 
 import fr.castorflex.android.smoothprogressbar.SmoothProgressBar;
+import io.reactivex.ObservableTransformer;
 import io.reactivex.SingleTransformer;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.schedulers.Schedulers;
 
 public abstract class LoadingFragmentBase extends Fragment implements
         BaseActivity.RefreshableChild, SwipeRefreshLayout.ChildScrollDelegate {
@@ -27,6 +31,7 @@ public abstract class LoadingFragmentBase extends Fragment implements
     private SmoothProgressBar mProgress;
     private final int[] mProgressColors = new int[2];
     private boolean mContentShown = true;
+    private long mContentHiddenTime;
     private RxLoader mRxLoader;
 
     public LoadingFragmentBase() {
@@ -83,6 +88,13 @@ public abstract class LoadingFragmentBase extends Fragment implements
                 .compose(mRxLoader.makeSingleTransformer(id, force));
     }
 
+    protected <T> ObservableTransformer<T, T> makeLoaderObservable(int id, boolean force) {
+        return upstream -> upstream
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .compose(mRxLoader.makeObservableTransformer(id, force));
+    }
+
     protected void handleLoadFailure(Throwable error) {
         BaseActivity activity = getBaseActivity();
         if (activity != null) {
@@ -116,6 +128,13 @@ public abstract class LoadingFragmentBase extends Fragment implements
     protected void setContentShown(boolean shown) {
         if (mContentShown != shown) {
             mContentShown = shown;
+            if (!shown) {
+                mContentHiddenTime = System.nanoTime();
+            } else if (mContentHiddenTime != 0) {
+                PerformanceMetrics.recordTiming(PerformanceMetrics.TIMING_CONTENT_SHOWN,
+                        getClass().getSimpleName(), mContentHiddenTime);
+                mContentHiddenTime = 0;
+            }
             if (mContentContainer != null) {
                 updateContentVisibility();
             }
@@ -199,15 +199,18 @@ public class PullRequestConversationFragment extends IssueFragmentBase {
 
         Single<List<TimelineItem>> timelineItemsSingle = ApiHelpers.PageIterator
                 .toSingle(page -> timelineService.getTimeline(mRepoOwner, mRepoName, issueNumber, page))
+                .compose(RxUtils::loadForProcessing)
                 .compose(RxUtils.filter(event -> INTERESTING_EVENTS.contains(event.event())))
                 .map(this::removeRedundantClosedEvent)
                 .compose(RxUtils.mapList(TimelineItem::fromIssueEvent));
 
         Single<List<Review>> reviewsSingle = ApiHelpers.PageIterator
                 .toSingle(page -> reviewService.getReviews(mRepoOwner, mRepoName, issueNumber, page))
+                .compose(RxUtils::loadForProcessing)
                 .cache(); // single is used multiple times -> avoid refetching data
         Single<List<ReviewComment>> prCommentsSingle = ApiHelpers.PageIterator
                 .toSingle(page -> prCommentService.getPullRequestComments(mRepoOwner, mRepoName, issueNumber, page))
+                .compose(RxUtils::loadForProcessing)
                 .compose(RxUtils.sortList(ApiHelpers.COMMENT_COMPARATOR))
                 .cache(); // single is used multiple times -> avoid refetching data
 
@@ -23,6 +23,8 @@ import com.meisolsson.githubsdk.service.pull_request.PullRequestService;
 
 import java.util.List;
 
+import io.reactivex.android.schedulers.AndroidSchedulers;
+
 public class PullRequestFilesFragment extends CommitFragment {
     public static PullRequestFilesFragment newInstance(String repoOwner, String repoName,
             int pullRequestNumber, String headSha) {
@@ -50,6 +52,8 @@ public class PullRequestFilesFragment extends CommitFragment {
     private String mHeadSha;
     private List<GitHubFile> mFiles;
     private List<ReviewComment> mComments;
+    // Number of entries of mFiles that already have views
+    private int mShownFileCount;
 
     private final ActivityResultLauncher<Intent> mDiffViewerLauncher = registerForActivityResult(
             new ActivityResultContracts.StartActivityForResult(),
@@ -76,6 +80,7 @@ public class PullRequestFilesFragment extends CommitFragment {
 
     @Override
     public void onViewCreated(View view, Bundle savedInstanceState) {
+        mShownFileCount = 0;
         super.onViewCreated(view, savedInstanceState);
         mContentView.findViewById(R.id.iv_gravatar).setVisibility(View.GONE);
         mContentView.findViewById(R.id.tv_author).setVisibility(View.GONE);
@@ -92,10 +97,16 @@ public class PullRequestFilesFragment extends CommitFragment {
 
     @Override
     protected void populateUiIfReady() {
-        if (mFiles != null && mComments != null) {
-            fillStats(mFiles, mComments);
-            setContentShown(true);
+        // Files are shown as they arrive, comment counts are added once comments are loaded
+        if (mFiles == null) {
+            return;
+        }
+        if (mShownFileCount == 0) {
+            clearStats();
         }
+        appendStats(mFiles, mShownFileCount, mComments);
+        mShownFileCount = mFiles.size();
+        setContentShown(true);
     }
 
     @Override
@@ -123,11 +134,16 @@ public class PullRequestFilesFragment extends CommitFragment {
     private void loadFiles(boolean force) {
         var service = ServiceFactory.getForFullPagedLists(PullRequestService.class, force);
         ApiHelpers.PageIterator
-                .toSingle(page -> service.getPullRequestFiles(
-                        mRepoOwner, mRepoName, mPullRequestNumber, page))
-                .compose(makeLoaderSingle(ID_LOADER_FILES, force))
+                .toProgressiveObservable(page -> service.getPullRequestFiles(
+                        mRepoOwner, mRepoName, mPullRequestNumber, page),
+                        AndroidSchedulers.mainThread())
+                .compose(makeLoaderObservable(ID_LOADER_FILES, force))
                 .subscribe(result -> {
-                    mFiles = result;
+                    // Every emission of a load is the same, growing list
+                    if (result != mFiles) {
+                        mFiles = result;
+                        mShownFileCount = 0;
+                    }
                     populateUiIfReady();
                 }, this::handleLoadFailure);
     }
@@ -141,7 +157,9 @@ public class PullRequestFilesFragment extends CommitFragment {
                 .compose(makeLoaderSingle(ID_LOADER_COMMENTS, force))
                 .subscribe(result -> {
                     mComments = result;
-                    populateUiIfReady();
+                    if (mFiles != null) {
+                        updateCommentCounts(result);
+                    }
                 }, this::handleLoadFailure);
     }
 }
\ No newline at end of file
@@ -49,7 +49,6 @@ import java.util.List;
 import java.util.Optional;
 
 import io.reactivex.Single;
-import io.reactivex.schedulers.Schedulers;
 import retrofit2.Response;
 
 public class ReviewFragment extends ListDataBaseFragment<TimelineItem> implements
@@ -175,6 +174,7 @@ public class ReviewFragment extends ListDataBaseFragment<TimelineItem> implement
         Single<List<ReviewComment>> reviewCommentsSingle = ApiHelpers.PageIterator
                 .toSingle(page -> reviewService.getReviewComments(
                         mRepoOwner, mRepoName, mIssueNumber, mReview.id(), page))
+                .compose(RxUtils::loadForProcessing)
                 .compose(RxUtils.sortList(ApiHelpers.COMMENT_COMPARATOR))
                 .cache(); // single is used multiple times -> avoid refetching data
 
@@ -200,15 +200,18 @@ public class ReviewFragment extends ListDataBaseFragment<TimelineItem> implement
                     return ApiHelpers.PageIterator
                             .toSingle(page -> commentService.getPullRequestComments(
                                     mRepoOwner, mRepoName, mIssueNumber, page))
+                            .compose(RxUtils::loadForProcessing)
                             .compose(RxUtils.sortList(ApiHelpers.COMMENT_COMPARATOR))
                             .map(Optional::of);
                 });
 
         return Single.zip(
-                reviewItemSingle.subscribeOn(Schedulers.io()),
-                reviewCommentsSingle.subscribeOn(Schedulers.io()),
-                filesSingle.subscribeOn(Schedulers.io()),
-                commentsSingle.subscribeOn(Schedulers.io()),
+                // make sure the zipper runs on the computation pool, regardless of which
+                // source finishes last
+                reviewItemSingle.compose(RxUtils::loadForProcessing),
+                reviewCommentsSingle.compose(RxUtils::loadForProcessing),
+                filesSingle.compose(RxUtils::loadForProcessing),
+                commentsSingle.compose(RxUtils::loadForProcessing),
                 (reviewItem, reviewComments, filesOpt, commentsOpt) -> {
             if (!reviewComments.isEmpty()) {
                 HashMap<String, GitHubFile> filesByName = new HashMap<>();
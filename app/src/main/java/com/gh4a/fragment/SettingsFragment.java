@@ -8,6 +8,7 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.DialogFragment;
 import androidx.appcompat.app.AlertDialog;
@@ -23,13 +24,17 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import com.gh4a.BuildConfig;
 import com.gh4a.Gh4Application;
 import com.gh4a.R;
 import com.gh4a.activities.IssueListActivity;
 import com.gh4a.activities.RepositoryActivity;
+import com.gh4a.utils.PerformanceMetrics;
 import com.gh4a.worker.NotificationsWorker;
 import com.gh4a.widget.IntegerListPreference;
 
+import org.json.JSONException;
+
 public class SettingsFragment extends PreferenceFragmentCompat implements
         Preference.OnPreferenceClickListener, Preference.OnPreferenceChangeListener {
     public interface OnStateChangeListener {
@@ -47,11 +52,13 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
     public static final String KEY_NOTIFICATION_INTERVAL = "notification_interval";
     private static final String KEY_ABOUT = "about";
     private static final String KEY_OPEN_SOURCE_COMPONENTS = "open_source_components";
+    private static final String KEY_PERFORMANCE_METRICS = "performance_metrics";
 
     private OnStateChangeListener mListener;
     private IntegerListPreference mThemePref;
     private Preference mAboutPref;
     private Preference mOpenSourcePref;
+    private Preference mPerformanceMetricsPref;
     private TwoStatePreference mNotificationsPref;
     private IntegerListPreference mNotificationIntervalPref;
 
@@ -79,6 +86,13 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
         mOpenSourcePref = findPreference(KEY_OPEN_SOURCE_COMPONENTS);
         mOpenSourcePref.setOnPreferenceClickListener(this);
 
+        mPerformanceMetricsPref = findPreference(KEY_PERFORMANCE_METRICS);
+        if (BuildConfig.DEBUG) {
+            mPerformanceMetricsPref.setOnPreferenceClickListener(this);
+        } else {
+            getPreferenceScreen().removePreference(mPerformanceMetricsPref);
+        }
+
         mNotificationsPref = findPreference(KEY_NOTIFICATIONS);
         mNotificationsPref.setOnPreferenceChangeListener(this);
 
@@ -127,6 +141,10 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
             new OpenSourceComponentListDialogFragment()
                     .show(getChildFragmentManager(), "opensource");
             return true;
+        } else if (pref == mPerformanceMetricsPref) {
+            new PerformanceMetricsDialogFragment()
+                    .show(getChildFragmentManager(), "metrics");
+            return true;
         }
         return false;
     }
@@ -234,6 +252,47 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
         }
     }
 
+    public static class PerformanceMetricsDialogFragment extends DialogFragment {
+        @NonNull
+        @Override
+        public Dialog onCreateDialog(Bundle savedInstanceState) {
+            LayoutInflater inflater = LayoutInflater.from(getContext());
+            View view = inflater.inflate(R.layout.performance_metrics_dialog, null);
+            TextView metricsView = view.findViewById(R.id.metrics);
+            String summary = PerformanceMetrics.getSummary();
+            if (summary.isEmpty()) {
+                metricsView.setText(R.string.performance_metrics_empty);
+            } else {
+                metricsView.setText(summary);
+            }
+
+            return new AlertDialog.Builder(getContext())
+                    .setView(view)
+                    .setTitle(R.string.performance_metrics)
+                    .setPositiveButton(R.string.ok, null)
+                    .setNegativeButton(R.string.performance_metrics_export,
+                            (dialog, which) -> exportMetrics())
+                    .setNeutralButton(R.string.performance_metrics_reset,
+                            (dialog, which) -> PerformanceMetrics.reset())
+                    .create();
+        }
+
+        private void exportMetrics() {
+            final String json;
+            try {
+                json = PerformanceMetrics.toJson().toString(2);
+            } catch (JSONException e) {
+                Log.w(Gh4Application.LOG_TAG, "Could not export performance metrics", e);
+                return;
+            }
+            Intent sendIntent = new Intent(Intent.ACTION_SEND);
+            sendIntent.setType("application/json");
+            sendIntent.putExtra(Intent.EXTRA_SUBJECT, getString(R.string.performance_metrics));
+            sendIntent.putExtra(Intent.EXTRA_TEXT, json);
+            startActivity(Intent.createChooser(sendIntent, getString(R.string.share_title)));
+        }
+    }
+
     private static class OpenSourceComponentAdapter extends RecyclerView.Adapter<OpenSourceComponentViewHolder> {
         private static final String[][] COMPONENTS = new String[][] {
             { "android-gif-drawable", "https://github.com/koral--/android-gif-drawable" },
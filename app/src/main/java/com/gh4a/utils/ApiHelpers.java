@@ -35,9 +35,13 @@ import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
 
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.functions.Predicate;
+import io.reactivex.schedulers.Schedulers;
 import io.reactivex.subjects.BehaviorSubject;
 import retrofit2.Response;
 
@@ -355,31 +359,102 @@ public class ApiHelpers {
     }
 
     public static class PageIterator<T> {
+        // Number of pages fetched at the same time once the total page count is known
+        public static final int DEFAULT_PAGE_CONCURRENCY = 4;
+
         public interface PageProducer<T> {
             Single<Response<Page<T>>> getPage(long page);
         }
 
         public static <T> Single<List<T>> toSingle(PageProducer<T> producer) {
+            return toSingle(producer, DEFAULT_PAGE_CONCURRENCY);
+        }
+
+        public static <T> Single<List<T>> toSingle(PageProducer<T> producer, int maxConcurrency) {
+            return toFlowable(producer, maxConcurrency)
+                    .<List<T>>collect(ArrayList::new, List::addAll);
+        }
+
+        /**
+         * Emits the items of each page in page order as soon as the respective page
+         * (and all pages before it) arrived.
+         */
+        public static <T> Flowable<List<T>> toFlowable(PageProducer<T> producer) {
+            return toFlowable(producer, DEFAULT_PAGE_CONCURRENCY);
+        }
+
+        public static <T> Flowable<List<T>> toFlowable(PageProducer<T> producer, int maxConcurrency) {
+            return pages(producer, maxConcurrency)
+                    .map(Page::items);
+        }
+
+        /**
+         * Emits the list of all items loaded so far after each page, the last emission
+         * containing the full list. Useful for showing the first items while the remaining
+         * pages are still loading.
+         * All emissions are the same list instance, which grows by one page per emission.
+         * Pages are appended on the given scheduler, so the list must only be accessed
+         * from there.
+         */
+        public static <T> Observable<List<T>> toProgressiveObservable(PageProducer<T> producer,
+                Scheduler scheduler) {
+            return toFlowable(producer)
+                    .subscribeOn(Schedulers.io())
+                    .observeOn(scheduler)
+                    .<List<T>>scanWith(ArrayList::new, (items, pageItems) -> {
+                        items.addAll(pageItems);
+                        return items;
+                    })
+                    // filter out initial value
+                    .skip(1)
+                    .toObservable();
+        }
+
+        private static <T> Flowable<Page<T>> pages(PageProducer<T> producer, int maxConcurrency) {
+            return fetchPage(producer, 1).flatMapPublisher(firstPage -> {
+                Integer next = firstPage.next();
+                Integer last = firstPage.last();
+                if (next == null) {
+                    return Flowable.just(firstPage);
+                }
+                if (last == null || last < next || maxConcurrency <= 1) {
+                    // Without knowing the page count, we can't do anything but walking the
+                    // 'next' links one after another
+                    return Flowable.concat(Flowable.just(firstPage),
+                            sequentialPages(producer, next));
+                }
+                // The first page tells us about the total page count, so fetch all remaining
+                // pages in parallel. concatMapEager makes sure they're delivered in order.
+                return Flowable.concat(Flowable.just(firstPage), Flowable.range(next, last - next + 1)
+                        .concatMapEager(page -> fetchPage(producer, page).toFlowable(),
+                                maxConcurrency, 1));
+            });
+        }
+
+        private static <T> Flowable<Page<T>> sequentialPages(PageProducer<T> producer, int startPage) {
             BehaviorSubject<Optional<Integer>> pageControl =
-                    BehaviorSubject.createDefault(Optional.of(1));
+                    BehaviorSubject.createDefault(Optional.of(startPage));
             return pageControl
                     .concatMap(page -> {
                         if (!page.isPresent()) {
-                            return Observable.<List<T>>empty().doOnComplete(() -> pageControl.onComplete());
+                            return Observable.<Page<T>>empty().doOnComplete(() -> pageControl.onComplete());
                         }
-                        return producer.getPage(page.get())
+                        return fetchPage(producer, page.get())
                                 .toObservable()
-                                .compose(PageIterator::evaluateError)
-                                .doOnNext(resultPage -> pageControl.onNext(Optional.ofNullable(resultPage.next())))
-                                .map(responsePage -> responsePage.items());
+                                .doOnNext(resultPage -> pageControl.onNext(Optional.ofNullable(resultPage.next())));
                     })
-                    .toList()
-                    .map(lists -> {
-                        List<T> result = new ArrayList<>();
-                        for (List<T> l : lists) {
-                            result.addAll(l);
-                        }
-                        return result;
+                    .toFlowable(BackpressureStrategy.BUFFER);
+        }
+
+        private static <T> Single<Page<T>> fetchPage(PageProducer<T> producer, long page) {
+            // Make sure the request is done on the I/O pool, even if the iterator
+            // is subscribed to from a computation thread
+            return producer.getPage(page)
+                    .subscribeOn(Schedulers.io())
+                    .map(response -> {
+                        throwOnFailure(response);
+                        PerformanceMetrics.recordPageFetched(response.raw().request().url());
+                        return response.body();
                     });
         }
 
@@ -391,9 +466,8 @@ public class ApiHelpers {
                         if (!page.isPresent()) {
                             return Observable.<Optional<T>>empty().doOnComplete(() -> pageControl.onComplete());
                         }
-                        return producer.getPage(page.get())
+                        return fetchPage(producer, page.get())
                                 .toObservable()
-                                .compose(PageIterator::evaluateError)
                                 .map(resultPage -> {
                                     for (T item : resultPage.items()) {
                                         if (predicate.test(item)) {
@@ -408,12 +482,5 @@ public class ApiHelpers {
                     .filter(opt -> opt.isPresent())
                     .first(Optional.empty());
         }
-
-        private static <T> Observable<Page<T>> evaluateError(Observable<Response<Page<T>>> upstream) {
-            return upstream.map(response -> {
-                throwOnFailure(response);
-                return response.body();
-            });
-        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,224 @@
+package com.gh4a.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * Disk cache for already downscaled avatars, keyed by user id and pixel size. Avatars are
+ * stored as WebP, so a cached avatar only needs a small file read and decode, but no network
+ * request or scaling. The file names also contain the time the avatar was written, which is
+ * used for expiry, while the modification time of the files is bumped on each access to
+ * keep the LRU order across restarts.
+ */
+class AvatarDiskCache {
+    private static final String TAG = "AvatarDiskCache";
+
+    private static final long MAX_SIZE_BYTES = 4 * 1024 * 1024;
+    // Avatars can be changed by their owner, so refetch them once in a while
+    private static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(7);
+    private static final int QUALITY = 90;
+    private static final String SUFFIX = ".webp";
+
+    private static class Entry {
+        final String fileName;
+        final long size;
+        final long writeTime;
+
+        Entry(String fileName, long size, long writeTime) {
+            this.fileName = fileName;
+            this.size = size;
+            this.writeTime = writeTime;
+        }
+    }
+
+    private final File mDirectory;
+    // key (user id and size) -> entry, in LRU order
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    private long mTotalSize;
+    private boolean mIndexLoaded;
+
+    AvatarDiskCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Returns the cached avatar, or null if there is none. Must not be called on the main thread.
+     */
+    Bitmap get(long userId, int sizePx) {
+        String key = makeKey(userId, sizePx);
+        long now = System.currentTimeMillis();
+        final Entry entry;
+        synchronized (this) {
+            loadIndexIfNeeded();
+            // get() also moves the entry to the end of the LRU order
+            entry = mEntries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.writeTime > MAX_AGE_MS) {
+                remove(key);
+                return null;
+            }
+        }
+
+        File file = new File(mDirectory, entry.fileName);
+        file.setLastModified(now);
+        Bitmap bitmap = decode(file);
+        if (bitmap == null) {
+            synchronized (this) {
+                // unless it was replaced in the meantime
+                if (mEntries.get(key) == entry) {
+                    remove(key);
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Stores the given avatar. Must not be called on the main thread.
+     */
+    void put(long userId, int sizePx, Bitmap bitmap) {
+        String key = makeKey(userId, sizePx);
+        long writeTime = System.currentTimeMillis();
+        String name = key + "_" + writeTime + SUFFIX;
+        File tempFile = new File(mDirectory, name + ".tmp");
+        File file = new File(mDirectory, name);
+
+        synchronized (this) {
+            loadIndexIfNeeded();
+            if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+                return;
+            }
+        }
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            if (!bitmap.compress(getCompressFormat(), QUALITY, out)) {
+                throw new IOException("Compressing failed");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not store avatar for user " + userId, e);
+            tempFile.delete();
+            return;
+        }
+
+        synchronized (this) {
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                return;
+            }
+            remove(key);
+            Entry entry = new Entry(name, file.length(), writeTime);
+            mEntries.put(key, entry);
+            mTotalSize += entry.size;
+            trimToSize();
+        }
+    }
+
+    private static Bitmap decode(File file) {
+        try (BufferedSource source = Okio.buffer(Okio.source(file))) {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            // Only the header is needed for the bounds, which stays buffered
+            // in the source for the actual decoding pass
+            BitmapFactory.decodeStream(source.peek().inputStream(), null, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+            options.inJustDecodeBounds = false;
+            options.inScaled = false;
+            // Reuse a bitmap released by the inline image loader, if there is one
+            Bitmap bitmap = BitmapPool.decode(source, options,
+                    () -> Okio.buffer(Okio.source(file)));
+            if (bitmap != null) {
+                // Stored avatars are already scaled, see AvatarHandler.decodeBitmap()
+                bitmap.setDensity(Bitmap.DENSITY_NONE);
+            }
+            return bitmap;
+        } catch (IOException e) {
+            Log.d(TAG, "Could not read avatar from " + file, e);
+            return null;
+        }
+    }
+
+    private void loadIndexIfNeeded() {
+        // called with this locked
+        if (mIndexLoaded) {
+            return;
+        }
+        mIndexLoaded = true;
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // The modification time is bumped on access, see get()
+        Arrays.sort(files, (lhs, rhs) -> Long.compare(lhs.lastModified(), rhs.lastModified()));
+        for (File file : files) {
+            String name = file.getName();
+            // <user id>_<size>_<write time>.webp
+            int timeStart = name.lastIndexOf('_') + 1;
+            long writeTime = -1;
+            if (timeStart > 1 && name.lastIndexOf('_', timeStart - 2) > 0
+                    && name.endsWith(SUFFIX)) {
+                try {
+                    writeTime = Long.parseLong(
+                            name.substring(timeStart, name.length() - SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    // handled below
+                }
+            }
+            if (writeTime < 0) {
+                // leftover from an interrupted write or from an older version
+                file.delete();
+                continue;
+            }
+            String key = name.substring(0, timeStart - 1);
+            remove(key);
+            mEntries.put(key, new Entry(name, file.length(), writeTime));
+            mTotalSize += file.length();
+        }
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        // called with this locked
+        Iterator<Entry> iter = mEntries.values().iterator();
+        while (mTotalSize > MAX_SIZE_BYTES && iter.hasNext()) {
+            Entry entry = iter.next();
+            new File(mDirectory, entry.fileName).delete();
+            mTotalSize -= entry.size;
+            iter.remove();
+        }
+    }
+
+    private void remove(String key) {
+        // called with this locked
+        Entry entry = mEntries.remove(key);
+        if (entry != null) {
+            mTotalSize -= entry.size;
+            new File(mDirectory, entry.fileName).delete();
+        }
+    }
+
+    private static String makeKey(long userId, int sizePx) {
+        return userId + "_" + sizePx;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat getCompressFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+}
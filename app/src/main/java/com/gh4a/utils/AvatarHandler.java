@@ -1,7 +1,14 @@
 package com.gh4a.utils;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.content.Context;
 import android.content.res.Resources;
@@ -17,9 +24,9 @@ import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
 import android.net.Uri;
 import android.os.Handler;
-import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.os.Process;
 import androidx.annotation.ColorInt;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -29,36 +36,49 @@ import androidx.collection.LongSparseArray;
 import androidx.collection.LruCache;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.Pair;
 import android.view.MenuItem;
 import android.widget.ImageView;
 
 import com.gh4a.ServiceFactory;
 import com.meisolsson.githubsdk.model.User;
 
+import io.reactivex.Maybe;
+import io.reactivex.Observable;
+import io.reactivex.schedulers.Schedulers;
 import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
 
 public class AvatarHandler {
     private static final String TAG = "GravatarHandler";
 
     private static final int MAX_CACHED_IMAGE_SIZE = 60; /* dp - maximum gravatar view size used */
+    // Avatars are requested in the size we need, so anything larger is bogus
+    private static final long MAX_DOWNLOAD_SIZE = 2 * 1024 * 1024;
 
     private static LruCache<Long, Bitmap> sCache;
+    private static AvatarDiskCache sDiskCache;
     private static int sNextRequestId = 1;
+    private static long sNextSequence = 1;
 
     private static class Request {
         long id;
         String url;
         ArrayList<ViewDelegate> views;
+        LoadTask task;
     }
     private static final LongSparseArray<Request> sRequests = new LongSparseArray<>();
     private static int sMaxImageSizePx = -1;
 
-    private static final int MSG_LOAD = 1;
-    private static final int MSG_LOADED = 2;
-    private static final int MSG_DESTROY = 3;
+    private static final int WORKER_COUNT = 4;
+    private static final int WORKER_KEEP_ALIVE_SECONDS = 3;
 
-    private static HandlerThread sWorkerThread = null;
-    private static Handler sWorkerHandler = null;
+    private static final int MSG_LOADED = 1;
+
+    // Workers pick the most recently requested avatar first, as that most likely
+    // belongs to a view that is currently on screen
+    private static final ThreadPoolExecutor sExecutor = createExecutor();
 
     private static final Handler sHandler = new Handler(Looper.getMainLooper()) {
         @Override
@@ -66,12 +86,6 @@ public class AvatarHandler {
             switch (msg.what) {
                 case MSG_LOADED:
                     processResult(msg.arg1, (Bitmap) msg.obj);
-                    if (sRequests.size() == 0) {
-                        sendEmptyMessageDelayed(MSG_DESTROY, 3000);
-                    }
-                    break;
-                case MSG_DESTROY:
-                    shutdownWorker();
                     break;
             }
         }
@@ -79,10 +93,6 @@ public class AvatarHandler {
         private void processResult(long requestId, Bitmap bitmap) {
             final Request request = sRequests.get(requestId);
             if (request != null && bitmap != null) {
-                synchronized (AvatarHandler.class) {
-                    sCache.put(request.id, bitmap);
-                }
-
                 for (ViewDelegate view : request.views) {
                     applyAvatarToView(view, bitmap);
                 }
@@ -109,24 +119,58 @@ public class AvatarHandler {
         assignAvatarInternal(new MenuItemDelegate(context, item), userName, userId, null);
     }
 
-    public static Bitmap loadUserAvatarSynchronously(Context context, User user) {
-        if (user == null) {
-            return null;
+    /**
+     * Loads the avatars of all given users, fetching those that aren't cached yet in parallel.
+     * Blocks until all avatars are loaded, so must not be called on the main thread.
+     *
+     * @return The loaded avatars by user id; users whose avatar couldn't be loaded are missing
+     */
+    public static LongSparseArray<Bitmap> loadUserAvatarsSynchronously(Context context,
+            Collection<User> users) {
+        LongSparseArray<Bitmap> result = new LongSparseArray<>();
+        List<User> usersToFetch = new ArrayList<>();
+        for (User user : users) {
+            if (user == null || result.containsKey(user.id())) {
+                continue;
+            }
+            Bitmap cachedBitmap = loadBitmapFromCache(context, user.id());
+            if (cachedBitmap != null) {
+                result.put(user.id(), cachedBitmap);
+            } else {
+                // mark as handled, so duplicates aren't fetched twice
+                result.put(user.id(), null);
+                usersToFetch.add(user);
+            }
         }
-        Bitmap cachedBitmap = loadBitmapFromCache(context, user.id());
-        if (cachedBitmap != null) {
-            return cachedBitmap;
+
+        Observable.fromIterable(usersToFetch)
+                .flatMapMaybe(user -> Maybe.fromCallable(() -> {
+                    Bitmap bitmap = loadBitmap(user.id(), makeUrl(user.avatarUrl(), user.id()));
+                    return bitmap != null ? putBitmapIntoCache(user.id(), bitmap) : null;
+                })
+                .map(bitmap -> Pair.create(user.id(), bitmap))
+                .onErrorComplete()
+                .subscribeOn(Schedulers.io()), false, WORKER_COUNT)
+                .blockingForEach(entry -> result.put(entry.first, entry.second));
+
+        for (int i = result.size() - 1; i >= 0; i--) {
+            if (result.valueAt(i) == null) {
+                result.removeAt(i);
+            }
         }
-        try {
-            Bitmap bitmap = fetchBitmap(makeUrl(user.avatarUrl(), user.id()));
-            if (bitmap != null) {
-                synchronized (AvatarHandler.class) {
-                    sCache.put(user.id(), bitmap);
-                }
+        return result;
+    }
+
+    private static Bitmap putBitmapIntoCache(long userId, Bitmap bitmap) {
+        synchronized (AvatarHandler.class) {
+            Bitmap cached = sCache.get(userId);
+            if (cached != null) {
+                // don't replace (and thus recycle) a bitmap that may be in use
+                BitmapPool.put(bitmap);
+                return cached;
             }
+            sCache.put(userId, bitmap);
             return bitmap;
-        } catch (IOException e) {
-            return null;
         }
     }
 
@@ -157,6 +201,12 @@ public class AvatarHandler {
         Request request = getRequestForId(userId);
         if (request != null) {
             request.views.add(view);
+            // The view was just bound, so move the request to the front of the queue
+            // if it's still waiting there
+            if (sExecutor.remove(request.task)) {
+                request.task.sequence = sNextSequence++;
+                sExecutor.execute(request.task);
+            }
             return;
         }
 
@@ -166,16 +216,22 @@ public class AvatarHandler {
         request.url = makeUrl(url, userId);
         request.views = new ArrayList<>();
         request.views.add(view);
+        request.task = new LoadTask(requestId, userId, request.url, sNextSequence++);
         sRequests.put(requestId, request);
 
-        sHandler.removeMessages(MSG_DESTROY);
-        if (sWorkerThread == null) {
-            sWorkerThread = new HandlerThread("GravatarLoader");
-            sWorkerThread.start();
-            sWorkerHandler = new WorkerHandler(sWorkerThread.getLooper());
-        }
-        Message msg = sWorkerHandler.obtainMessage(MSG_LOAD, requestId, 0, request.url);
-        msg.sendToTarget();
+        sExecutor.execute(request.task);
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new PriorityBlockingQueue<>(),
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, "GravatarLoader-" + threadCount.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     private static void initialize(Context context) {
@@ -183,13 +239,9 @@ public class AvatarHandler {
         // Use 10% of the available memory or 1MB for the cache, whatever is larger
         final int limit = Math.max(maxMemory / 10, 1024);
 
+        // Evicted avatars are neither recycled nor handed to the BitmapPool, as they may
+        // still be shown by a view or a notification; they are left to the garbage collector
         sCache = new LruCache<Long, Bitmap>(limit) {
-            @Override
-            protected void entryRemoved(boolean evicted, Long key, Bitmap oldValue, Bitmap newValue) {
-                super.entryRemoved(evicted, key, oldValue, newValue);
-                oldValue.recycle();
-            }
-
             @Override
             protected int sizeOf(Long key, Bitmap value) {
                 final long sizeInBytes = value.getAllocationByteCount();
@@ -197,6 +249,8 @@ public class AvatarHandler {
             }
         };
 
+        sDiskCache = new AvatarDiskCache(new File(context.getCacheDir(), "avatars"));
+
         Resources res = context.getResources();
         sMaxImageSizePx = Math.round(res.getDisplayMetrics().density * MAX_CACHED_IMAGE_SIZE);
     }
@@ -244,9 +298,10 @@ public class AvatarHandler {
             Request request = sRequests.valueAt(i);
             if (request.views.remove(view)) {
                 if (request.views.isEmpty()) {
-                    if (sWorkerHandler != null) {
-                        sWorkerHandler.removeMessages(MSG_LOAD, request.url);
-                    }
+                    // Make sure the request doesn't hit the network if a worker
+                    // already took it from the queue
+                    request.task.canceled = true;
+                    sExecutor.remove(request.task);
                     sRequests.removeAt(i);
                 }
                 return;
@@ -254,80 +309,119 @@ public class AvatarHandler {
         }
     }
 
+    private static Bitmap loadBitmap(long userId, String url) throws IOException {
+        Bitmap bitmap = sDiskCache.get(userId, sMaxImageSizePx);
+        if (bitmap == null) {
+            bitmap = fetchBitmap(url);
+            if (bitmap != null) {
+                sDiskCache.put(userId, sMaxImageSizePx, bitmap);
+            }
+        }
+        return bitmap;
+    }
+
     private static Bitmap fetchBitmap(String url) throws IOException {
+        try (BufferedSource source = openUrl(url)) {
+            // Should decoding need a second attempt, fetch the data again
+            return decodeBitmap(source, () -> openUrl(url));
+        }
+    }
+
+    private static BufferedSource openUrl(String url) throws IOException {
         OkHttpClient client = ServiceFactory.getImageHttpClient();
         okhttp3.Request request = new okhttp3.Request.Builder()
                 .url(url)
                 .build();
 
-        byte[] data;
-
-        try (okhttp3.Response response = client.newCall(request).execute()) {
+        okhttp3.Response response = client.newCall(request).execute();
+        try {
             if (!response.isSuccessful()) {
                 throw new IOException("HTTP failure code " + response.code());
             }
-            data = response.body().bytes();
+            ResponseBody body = response.body();
+            // Closing the returned source closes the response
+            return SizeLimitedSource.limit(body.source(), body.contentLength(), MAX_DOWNLOAD_SIZE);
+        } catch (IOException e) {
+            response.close();
+            throw e;
         }
+    }
 
+    private static Bitmap decodeBitmap(BufferedSource source, BitmapPool.SourceOpener retryOpener) {
         BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
 
-        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        // Only the header is needed for the bounds, which stays buffered
+        // in the source for the actual decoding pass
+        BitmapFactory.decodeStream(source.peek().inputStream(), null, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
 
         options.inJustDecodeBounds = false;
 
+        // The decoder only supports powers of 2 as sample size
         final int widthRatio = options.outWidth / sMaxImageSizePx;
         final int heightRatio = options.outHeight / sMaxImageSizePx;
-        options.inSampleSize = Math.min(heightRatio, widthRatio);
-
-        Bitmap unscaled = BitmapFactory.decodeByteArray(data, 0, data.length, options);
-        if (unscaled == null) {
-            return null;
+        options.inSampleSize = Integer.highestOneBit(Math.max(1, Math.min(heightRatio, widthRatio)));
+
+        // Let the decoder scale the sampled image down to the desired size,
+        // instead of scaling it into a second bitmap
+        int sampledSize = Math.max(options.outWidth, options.outHeight) / options.inSampleSize;
+        if (sampledSize > sMaxImageSizePx) {
+            options.inScaled = true;
+            options.inDensity = sampledSize;
+            options.inTargetDensity = sMaxImageSizePx;
+        } else {
+            options.inScaled = false;
         }
 
-        // We'll scale the image to the desired density
-        unscaled.setDensity(0);
-
-        float widthScale = (float) sMaxImageSizePx / (float) unscaled.getWidth();
-        float heightScale = (float) sMaxImageSizePx / (float) unscaled.getHeight();
-        float scaleFactor = Math.min(1, Math.min(widthScale, heightScale));
-
-        Bitmap scaled = Bitmap.createScaledBitmap(unscaled,
-                (int) (scaleFactor * unscaled.getWidth()),
-                (int) (scaleFactor * unscaled.getHeight()), true);
-        if (scaled != unscaled) {
-            unscaled.recycle();
+        Bitmap bitmap = BitmapPool.decode(source, options, retryOpener);
+        if (bitmap != null) {
+            // We scaled the image ourselves, so it must not be scaled again when drawing
+            bitmap.setDensity(Bitmap.DENSITY_NONE);
         }
-        return scaled;
+        return bitmap;
     }
 
-    private static void shutdownWorker() {
-        if (sWorkerThread != null) {
-            sWorkerThread.getLooper().quit();
-            sWorkerHandler = null;
-            sWorkerThread = null;
-        }
-    }
+    private static class LoadTask implements Runnable, Comparable<LoadTask> {
+        final int requestId;
+        final long userId;
+        final String url;
+        // only modified while the task is not queued
+        long sequence;
+        volatile boolean canceled;
 
-    private static class WorkerHandler extends Handler {
-        public WorkerHandler(Looper looper) {
-            super(looper);
+        LoadTask(int requestId, long userId, String url, long sequence) {
+            this.requestId = requestId;
+            this.userId = userId;
+            this.url = url;
+            this.sequence = sequence;
         }
 
         @Override
-        public void handleMessage(Message msg) {
-            switch (msg.what) {
-                case MSG_LOAD:
-                    String url = (String) msg.obj;
-                    Bitmap bitmap = null;
-                    try {
-                        bitmap = fetchBitmap(url);
-                    } catch (IOException e) {
-                        Log.e(TAG, "Couldn't fetch gravatar from URL " + url, e);
-                    }
-                    sHandler.obtainMessage(MSG_LOADED, msg.arg1, 0, bitmap).sendToTarget();
-                    break;
+        public void run() {
+            if (canceled) {
+                return;
+            }
+            Bitmap bitmap = null;
+            try {
+                bitmap = loadBitmap(userId, url);
+            } catch (IOException e) {
+                Log.e(TAG, "Couldn't fetch gravatar from URL " + url, e);
+            }
+            if (bitmap != null) {
+                // Cache it even if the request was canceled in the meantime,
+                // the avatar is likely to be needed again soon
+                bitmap = putBitmapIntoCache(userId, bitmap);
             }
+            sHandler.obtainMessage(MSG_LOADED, requestId, 0, bitmap).sendToTarget();
+        }
+
+        @Override
+        public int compareTo(LoadTask other) {
+            // newest first
+            return Long.compare(other.sequence, sequence);
         }
     }
 
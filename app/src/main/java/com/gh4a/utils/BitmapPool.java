@@ -0,0 +1,187 @@
+package com.gh4a.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okio.BufferedSource;
+
+/**
+ * Pool of no longer used bitmaps, grouped by their allocation size. Pooled bitmaps are used
+ * as {@link BitmapFactory.Options#inBitmap} when decoding, which avoids allocating (and later
+ * garbage collecting) a new bitmap for every decoded image.
+ */
+public class BitmapPool {
+    private static final String TAG = "BitmapPool";
+
+    // Don't hand out bitmaps that are much larger than needed, that would waste memory
+    // better used for larger images
+    private static final int MAX_SIZE_MULTIPLIER = 2;
+    private static final long MAX_POOL_SIZE =
+            Math.max(Runtime.getRuntime().maxMemory() / 16, 2 * 1024 * 1024);
+
+    // allocation size -> bitmaps
+    private static final TreeMap<Integer, ArrayList<Bitmap>> sBitmaps = new TreeMap<>();
+    private static long sPoolSize;
+
+    /**
+     * Hands a bitmap that is no longer used to the pool. The bitmap must not be used by the
+     * caller afterwards. Bitmaps that can't be reused are recycled.
+     */
+    public static void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || isHardwareBitmap(bitmap) || size > MAX_POOL_SIZE / 2) {
+            bitmap.recycle();
+            return;
+        }
+        synchronized (sBitmaps) {
+            ArrayList<Bitmap> bitmaps = sBitmaps.get(size);
+            if (bitmaps == null) {
+                bitmaps = new ArrayList<>();
+                sBitmaps.put(size, bitmaps);
+            }
+            bitmaps.add(bitmap);
+            sPoolSize += size;
+            trimToSize();
+        }
+    }
+
+    /**
+     * Provides the image data once more, for retrying a decode whose data was consumed.
+     */
+    public interface SourceOpener {
+        BufferedSource open() throws IOException;
+    }
+
+    /**
+     * Decodes the image read from the given source, reusing a pooled bitmap if possible.
+     * The options must contain the image bounds, as obtained by a decode pass with
+     * {@link BitmapFactory.Options#inJustDecodeBounds} set.
+     * If the pooled bitmap turns out to be unsuitable, the data is obtained again from the
+     * given opener and decoded without it. That way the data is streamed into the decoder,
+     * instead of having to buffer all of it for a possible retry.
+     *
+     * @return The decoded bitmap, or null if the data could not be decoded
+     */
+    public static Bitmap decode(BufferedSource source, BitmapFactory.Options options,
+            SourceOpener retryOpener) {
+        options.inMutable = true;
+        options.inBitmap = get(getDecodedByteCount(options));
+        if (options.inBitmap == null) {
+            return BitmapFactory.decodeStream(source.inputStream(), null, options);
+        }
+
+        Bitmap bitmap = null;
+        boolean reuseFailed = false;
+        try {
+            bitmap = BitmapFactory.decodeStream(source.inputStream(), null, options);
+        } catch (IllegalArgumentException e) {
+            // Thrown for any decoding failure if inBitmap is set, e.g. if the pooled
+            // bitmap isn't suitable for the image after all
+            Log.d(TAG, "Could not decode into pooled bitmap", e);
+            reuseFailed = true;
+        }
+        if (bitmap == null) {
+            put(options.inBitmap);
+        }
+        options.inBitmap = null;
+        if (!reuseFailed) {
+            return bitmap;
+        }
+
+        try (BufferedSource retrySource = retryOpener.open()) {
+            return BitmapFactory.decodeStream(retrySource.inputStream(), null, options);
+        } catch (IOException e) {
+            Log.d(TAG, "Could not read image data again", e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns a cleared, mutable bitmap of the given size, reusing a pooled one if possible.
+     */
+    public static Bitmap obtain(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = get(width * height * getBytesPerPixel(config));
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.reconfigure(width, height, config);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    private static Bitmap get(int byteCount) {
+        synchronized (sBitmaps) {
+            Map.Entry<Integer, ArrayList<Bitmap>> entry = sBitmaps.ceilingEntry(byteCount);
+            if (entry == null || entry.getKey() > byteCount * MAX_SIZE_MULTIPLIER) {
+                return null;
+            }
+            ArrayList<Bitmap> bitmaps = entry.getValue();
+            Bitmap bitmap = bitmaps.remove(bitmaps.size() - 1);
+            if (bitmaps.isEmpty()) {
+                sBitmaps.remove(entry.getKey());
+            }
+            sPoolSize -= entry.getKey();
+            return bitmap;
+        }
+    }
+
+    private static void trimToSize() {
+        // called with sBitmaps locked; drop the largest bitmaps first, as they are
+        // the least likely to be reused
+        while (sPoolSize > MAX_POOL_SIZE && !sBitmaps.isEmpty()) {
+            Map.Entry<Integer, ArrayList<Bitmap>> entry = sBitmaps.lastEntry();
+            ArrayList<Bitmap> bitmaps = entry.getValue();
+            bitmaps.remove(0).recycle();
+            if (bitmaps.isEmpty()) {
+                sBitmaps.remove(entry.getKey());
+            }
+            sPoolSize -= entry.getKey();
+        }
+    }
+
+    private static int getDecodedByteCount(BitmapFactory.Options options) {
+        int sampleSize = Math.max(options.inSampleSize, 1);
+        float width = (float) Math.ceil((double) options.outWidth / sampleSize);
+        float height = (float) Math.ceil((double) options.outHeight / sampleSize);
+        if (options.inScaled && options.inDensity > 0 && options.inTargetDensity > 0) {
+            float scale = (float) options.inTargetDensity / options.inDensity;
+            width = width * scale + 0.5f;
+            height = height * scale + 0.5f;
+        }
+        // The bounds pass tells about the actual config on O+, e.g. F16 for wide gamut PNGs,
+        // unless we explicitly asked for a smaller config
+        Bitmap.Config config = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && options.outConfig != null
+                && options.inPreferredConfig != Bitmap.Config.RGB_565
+                ? options.outConfig : options.inPreferredConfig;
+        return (int) width * (int) height * getBytesPerPixel(config);
+    }
+
+    private static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && config == Bitmap.Config.RGBA_F16) {
+            return 8;
+        }
+        return 4;
+    }
+
+    private static boolean isHardwareBitmap(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                && bitmap.getConfig() == Bitmap.Config.HARDWARE;
+    }
+}
@@ -0,0 +1,173 @@
+package com.gh4a.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Per endpoint family counters of how API requests were answered (debug builds only, see
+ * {@link PerformanceMetrics#ENABLED}). To detect responses that had to be fully transferred
+ * again because the HTTP cache lost them, the requests that returned validators (ETag or
+ * Last-Modified) during this process lifetime are remembered, keyed by normalized URL and
+ * auth identity.
+ * Nothing is persisted and no validators are sent; conditional requests are entirely left
+ * to the OkHttp cache.
+ */
+public class CacheOutcomeTracker {
+    private static final int MAX_ENTRIES = 2000;
+
+    public static class Counters {
+        public final AtomicLong cacheHits = new AtomicLong();
+        public final AtomicLong notModified = new AtomicLong();
+        public final AtomicLong fullResponses = new AtomicLong();
+        // full responses for which we had seen validators before, meaning the HTTP cache
+        // lost the entry in the meantime
+        public final AtomicLong evictedRefetches = new AtomicLong();
+    }
+
+    // keys of requests whose last full response carried validators
+    private final LinkedHashMap<String, Boolean> mKeysWithValidators =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Entry<String, Boolean> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+    private final ConcurrentHashMap<String, Counters> mCounters = new ConcurrentHashMap<>();
+
+    /**
+     * Application interceptor that classifies the final response as served from cache,
+     * revalidated (304) or fully transferred.
+     */
+    public final Interceptor outcomeInterceptor = chain -> {
+        Response response = chain.proceed(chain.request());
+        Response networkResponse = response.networkResponse();
+        Counters counters = getCounters(response.request().url());
+        if (networkResponse == null) {
+            if (response.cacheResponse() != null) {
+                counters.cacheHits.incrementAndGet();
+            }
+        } else if (networkResponse.code() == 304) {
+            counters.notModified.incrementAndGet();
+        } else {
+            counters.fullResponses.incrementAndGet();
+        }
+        return response;
+    };
+
+    /**
+     * Network interceptor that records which GET requests returned validators, and counts
+     * unconditional full responses for requests that returned validators before.
+     */
+    public final Interceptor refetchInterceptor = chain -> {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+        if (!"GET".equals(request.method())) {
+            return response;
+        }
+
+        String key = makeKey(request);
+        boolean conditional = request.header("If-None-Match") != null
+                || request.header("If-Modified-Since") != null;
+        if (response.code() == 200) {
+            String eTag = response.header("ETag");
+            // see ETAG_WORKAROUND_INTERCEPTOR in ServiceFactory
+            if (eTag != null && eTag.contains("\"\"")) {
+                eTag = null;
+            }
+            boolean hasValidators = eTag != null || response.header("Last-Modified") != null;
+            Boolean previous;
+            synchronized (mKeysWithValidators) {
+                previous = hasValidators
+                        ? mKeysWithValidators.put(key, Boolean.TRUE)
+                        : mKeysWithValidators.remove(key);
+            }
+            if (previous != null && !conditional) {
+                getCounters(request.url()).evictedRefetches.incrementAndGet();
+            }
+        }
+        return response;
+    };
+
+    public Map<String, Counters> getCounters() {
+        return Collections.unmodifiableMap(new HashMap<>(mCounters));
+    }
+
+    public void resetCounters() {
+        mCounters.clear();
+    }
+
+    public static String getEndpointFamily(HttpUrl url) {
+        List<String> segments = url.pathSegments();
+        if (segments.isEmpty() || segments.get(0).isEmpty()) {
+            return "/";
+        }
+        String first = segments.get(0);
+        final int start;
+        switch (first) {
+            case "repos": start = 3; break; // repos/:owner/:repo
+            case "users": case "orgs": start = 2; break;
+            default: start = 1; break;
+        }
+        StringBuilder family = new StringBuilder(first);
+        int appended = 0;
+        for (int i = start; i < segments.size() && appended < 2; i++) {
+            String segment = segments.get(i);
+            if (isVariableSegment(segment)) {
+                continue;
+            }
+            family.append('/').append(segment);
+            appended++;
+        }
+        return family.toString();
+    }
+
+    private static boolean isVariableSegment(String segment) {
+        if (segment.isEmpty()) {
+            return true;
+        }
+        boolean allDigits = true, allHex = true;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            allDigits &= Character.isDigit(c);
+            allHex &= Character.digit(c, 16) >= 0;
+        }
+        return allDigits || (allHex && segment.length() >= 7);
+    }
+
+    private Counters getCounters(HttpUrl url) {
+        String family = getEndpointFamily(url);
+        Counters counters = mCounters.get(family);
+        if (counters == null) {
+            mCounters.putIfAbsent(family, new Counters());
+            counters = mCounters.get(family);
+        }
+        return counters;
+    }
+
+    private static String makeKey(Request request) {
+        HttpUrl url = request.url();
+        HttpUrl.Builder normalized = url.newBuilder().query(null).fragment(null);
+        List<String> names = new ArrayList<>(url.queryParameterNames());
+        Collections.sort(names);
+        for (String name : names) {
+            List<String> values = new ArrayList<>(url.queryParameterValues(name));
+            Collections.sort(values, (lhs, rhs) -> String.valueOf(lhs).compareTo(String.valueOf(rhs)));
+            for (String value : values) {
+                normalized.addQueryParameter(name, value);
+            }
+        }
+        String auth = request.header("Authorization");
+        return ApiHelpers.sha256Of((auth != null ? auth : "") + "\n" + normalized.build());
+    }
+}
@@ -0,0 +1,127 @@
+package com.gh4a.utils;
+
+/**
+ * Scanner for the declarations of inline {@code style} attributes. Values are reported as
+ * index ranges into the attribute string, so looking up a property doesn't allocate.
+ * Only the first whitespace separated token of a value is considered, e.g. {@code #fff} for
+ * {@code background: #fff url(...)}. If a property is declared multiple times, the last
+ * declaration wins, as in CSS.
+ */
+class CssStyleScanner {
+    // Color names understood by android.graphics.Color.parseColor()
+    private static final String[] COLOR_NAMES = {
+        "black", "darkgray", "gray", "lightgray", "white", "red", "green", "blue", "yellow",
+        "cyan", "magenta", "aqua", "fuchsia", "darkgrey", "grey", "lightgrey", "lime",
+        "maroon", "navy", "olive", "purple", "silver", "teal"
+    };
+    private static final int[] COLOR_VALUES = {
+        0xff000000, 0xff444444, 0xff888888, 0xffcccccc, 0xffffffff, 0xffff0000, 0xff00ff00,
+        0xff0000ff, 0xffffff00, 0xff00ffff, 0xffff00ff, 0xff00ffff, 0xffff00ff, 0xff444444,
+        0xff888888, 0xffcccccc, 0xff00ff00, 0xff800000, 0xff000080, 0xff808000, 0xff800080,
+        0xffc0c0c0, 0xff008080
+    };
+
+    /** Returned by {@link #parseColor()} if the value isn't a valid color. */
+    static final int NO_COLOR = 0;
+
+    private String mStyle;
+    private int mValueStart;
+    private int mValueEnd;
+
+    /**
+     * Looks up the given property in the style. On success, the value can be inspected using
+     * {@link #valueEquals(String)} and {@link #parseColor()}.
+     *
+     * @return Whether the property is declared with a non-empty value
+     */
+    boolean find(String style, String property) {
+        mStyle = style;
+        mValueStart = -1;
+        mValueEnd = -1;
+
+        final int length = style.length();
+        int pos = 0;
+        while (pos < length) {
+            int declarationEnd = style.indexOf(';', pos);
+            if (declarationEnd < 0) {
+                declarationEnd = length;
+            }
+            int nameStart = skipWhitespace(style, pos, declarationEnd);
+            int colon = style.indexOf(':', nameStart);
+            if (colon >= 0 && colon < declarationEnd) {
+                int nameEnd = colon;
+                while (nameEnd > nameStart && isWhitespace(style.charAt(nameEnd - 1))) {
+                    nameEnd--;
+                }
+                if (nameEnd - nameStart == property.length()
+                        && style.regionMatches(true, nameStart, property, 0, property.length())) {
+                    int valueStart = skipWhitespace(style, colon + 1, declarationEnd);
+                    int valueEnd = valueStart;
+                    while (valueEnd < declarationEnd && !isWhitespace(style.charAt(valueEnd))) {
+                        valueEnd++;
+                    }
+                    if (valueEnd > valueStart) {
+                        mValueStart = valueStart;
+                        mValueEnd = valueEnd;
+                    }
+                }
+            }
+            pos = declarationEnd + 1;
+        }
+        return mValueStart >= 0;
+    }
+
+    /**
+     * Checks whether the value found by the last successful {@link #find(String, String)}
+     * call equals the given keyword, ignoring case.
+     */
+    boolean valueEquals(String keyword) {
+        return mValueEnd - mValueStart == keyword.length()
+                && mStyle.regionMatches(true, mValueStart, keyword, 0, keyword.length());
+    }
+
+    /**
+     * Parses the value found by the last successful {@link #find(String, String)} call the
+     * same way {@link android.graphics.Color#parseColor(String)} does, i.e. {@code #RRGGBB},
+     * {@code #AARRGGBB} or a color name.
+     *
+     * @return The opaque color, or {@link #NO_COLOR} if the value isn't a color
+     */
+    int parseColor() {
+        int length = mValueEnd - mValueStart;
+        if (length <= 0) {
+            return NO_COLOR;
+        }
+        if (mStyle.charAt(mValueStart) == '#') {
+            if (length != 7 && length != 9) {
+                return NO_COLOR;
+            }
+            int color = 0;
+            for (int i = mValueStart + 1; i < mValueEnd; i++) {
+                int digit = Character.digit(mStyle.charAt(i), 16);
+                if (digit < 0) {
+                    return NO_COLOR;
+                }
+                color = (color << 4) | digit;
+            }
+            return color | 0xff000000;
+        }
+        for (int i = 0; i < COLOR_NAMES.length; i++) {
+            if (valueEquals(COLOR_NAMES[i])) {
+                return COLOR_VALUES[i];
+            }
+        }
+        return NO_COLOR;
+    }
+
+    private static int skipWhitespace(String s, int start, int end) {
+        while (start < end && isWhitespace(s.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
@@ -0,0 +1,99 @@
+package com.gh4a.utils;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Process wide cache of decoded images, shared by all {@link HttpImageGetter} instances.
+ * Bitmaps handed out by the cache are reference counted: they are only returned to the
+ * {@link BitmapPool} after they were evicted from the cache and all users released them.
+ */
+class DecodedImageCache {
+    private static class Entry {
+        final Bitmap bitmap;
+        int refCount;
+        boolean cached = true;
+
+        Entry(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+    }
+
+    // Use 1/8 of the available memory, but at least 4MB
+    private static final int MAX_SIZE_KB =
+            (int) Math.max(Runtime.getRuntime().maxMemory() / 1024 / 8, 4096);
+
+    private static final LruCache<String, Entry> sCache = new LruCache<String, Entry>(MAX_SIZE_KB) {
+        @Override
+        protected void entryRemoved(boolean evicted, String key, Entry oldValue, Entry newValue) {
+            // always called with DecodedImageCache.class locked, as all cache accesses are
+            oldValue.cached = false;
+            if (oldValue.refCount == 0) {
+                sEntries.remove(oldValue.bitmap);
+                BitmapPool.put(oldValue.bitmap);
+            }
+        }
+
+        @Override
+        protected int sizeOf(String key, Entry value) {
+            return value.bitmap.getAllocationByteCount() / 1024;
+        }
+    };
+    // all bitmaps that are cached or in use
+    private static final IdentityHashMap<Bitmap, Entry> sEntries = new IdentityHashMap<>();
+
+    static String makeKey(String url, int maxWidth, int densityDpi) {
+        return url + "@" + maxWidth + "@" + densityDpi;
+    }
+
+    /**
+     * Returns the cached bitmap for the given key, if any. The returned bitmap must be
+     * handed back via {@link #release(Bitmap)} when no longer used.
+     */
+    static synchronized Bitmap acquire(String key) {
+        Entry entry = sCache.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.refCount++;
+        return entry.bitmap;
+    }
+
+    /**
+     * Adds a freshly decoded bitmap to the cache. The caller owns a reference to the returned
+     * bitmap, which is a previously cached one if another thread decoded the same image
+     * in the meantime.
+     */
+    static synchronized Bitmap put(String key, Bitmap bitmap) {
+        Entry existing = sCache.get(key);
+        if (existing != null) {
+            BitmapPool.put(bitmap);
+            existing.refCount++;
+            return existing.bitmap;
+        }
+        Entry entry = new Entry(bitmap);
+        entry.refCount = 1;
+        sEntries.put(bitmap, entry);
+        sCache.put(key, entry);
+        return bitmap;
+    }
+
+    /**
+     * Gives up a reference to a bitmap obtained via {@link #acquire(String)} or
+     * {@link #put(String, Bitmap)}. Bitmaps not managed by the cache are returned to
+     * the pool right away.
+     */
+    static synchronized void release(Bitmap bitmap) {
+        Entry entry = sEntries.get(bitmap);
+        if (entry == null) {
+            BitmapPool.put(bitmap);
+            return;
+        }
+        if (--entry.refCount == 0 && !entry.cached) {
+            sEntries.remove(bitmap);
+            BitmapPool.put(bitmap);
+        }
+    }
+}
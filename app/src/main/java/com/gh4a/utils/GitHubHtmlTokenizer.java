@@ -0,0 +1,470 @@
+package com.gh4a.utils;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming tokenizer for the well-formed HTML subset GitHub renders Markdown into.
+ * For such input, it reports the same SAX events (as far as they're relevant for rendering)
+ * TagSoup does, without TagSoup's costly error recovery and restructuring. Input TagSoup would
+ * restructure (unclosed or misnested elements, block elements inside of inline ones, unknown
+ * entities etc.) is rejected with a {@link MalformedHtmlException}, in which case the caller is
+ * expected to parse it with TagSoup instead.
+ */
+class GitHubHtmlTokenizer {
+    static class MalformedHtmlException extends SAXException {
+        MalformedHtmlException(String message, int position) {
+            super(message + " at offset " + position);
+        }
+    }
+
+    private static final Set<String> VOID_ELEMENTS = setOf(
+            "area", "base", "br", "col", "embed", "hr", "img", "input",
+            "link", "meta", "param", "source", "track", "wbr");
+    // Elements we don't support: ones whose content isn't parsed as HTML, or ones TagSoup
+    // handles specially
+    private static final Set<String> UNSUPPORTED_ELEMENTS = setOf(
+            "body", "form", "frameset", "head", "html", "iframe", "noembed", "noframes",
+            "noscript", "option", "plaintext", "script", "select", "style", "textarea",
+            "title", "xmp");
+    // Elements TagSoup considers to be blocks ...
+    private static final Set<String> BLOCK_ELEMENTS = setOf(
+            "address", "blockquote", "center", "dir", "div", "dl", "fieldset",
+            "h1", "h2", "h3", "h4", "h5", "h6", "hr", "menu", "ol", "p", "pre", "table", "ul");
+    // ... which it moves out of these, as they may only contain inline content
+    private static final Set<String> INLINE_CONTAINERS = setOf(
+            "a", "abbr", "acronym", "b", "bdo", "big", "caption", "cite", "code", "dfn", "dt",
+            "em", "font", "h1", "h2", "h3", "h4", "h5", "h6", "i", "kbd", "label", "legend",
+            "p", "pre", "q", "s", "samp", "small", "span", "strike", "strong", "sub", "sup",
+            "tt", "u", "var");
+    // Elements that may only contain the given elements; TagSoup drops whitespace inside them
+    private static final Map<String, Set<String>> ALLOWED_CHILDREN = new HashMap<>();
+    // Elements that may only appear inside the given elements
+    private static final Map<String, Set<String>> REQUIRED_PARENTS = new HashMap<>();
+    private static final Map<String, Character> NAMED_ENTITIES = new HashMap<>();
+
+    static {
+        Set<String> lists = setOf("ul", "ol", "menu", "dir");
+        Set<String> tableSections = setOf("thead", "tbody", "tfoot");
+        for (String list : lists) {
+            ALLOWED_CHILDREN.put(list, setOf("li"));
+        }
+        ALLOWED_CHILDREN.put("dl", setOf("dt", "dd"));
+        ALLOWED_CHILDREN.put("table",
+                setOf("caption", "col", "colgroup", "thead", "tbody", "tfoot", "tr"));
+        ALLOWED_CHILDREN.put("colgroup", setOf("col"));
+        for (String section : tableSections) {
+            ALLOWED_CHILDREN.put(section, setOf("tr"));
+        }
+        ALLOWED_CHILDREN.put("tr", setOf("td", "th"));
+
+        REQUIRED_PARENTS.put("li", lists);
+        REQUIRED_PARENTS.put("dt", setOf("dl"));
+        REQUIRED_PARENTS.put("dd", setOf("dl"));
+        REQUIRED_PARENTS.put("caption", setOf("table"));
+        REQUIRED_PARENTS.put("colgroup", setOf("table"));
+        REQUIRED_PARENTS.put("col", setOf("table", "colgroup"));
+        for (String section : tableSections) {
+            REQUIRED_PARENTS.put(section, setOf("table"));
+        }
+        Set<String> rowParents = new HashSet<>(tableSections);
+        rowParents.add("table");
+        REQUIRED_PARENTS.put("tr", rowParents);
+        REQUIRED_PARENTS.put("td", setOf("tr"));
+        REQUIRED_PARENTS.put("th", setOf("tr"));
+
+        // GitHub only uses numeric entities apart from these
+        NAMED_ENTITIES.put("amp", '&');
+        NAMED_ENTITIES.put("lt", '<');
+        NAMED_ENTITIES.put("gt", '>');
+        NAMED_ENTITIES.put("quot", '"');
+        NAMED_ENTITIES.put("apos", '\'');
+        NAMED_ENTITIES.put("nbsp", '\u00a0');
+    }
+
+    private final String mSource;
+    private final char[] mChars;
+    private final ContentHandler mHandler;
+    private final AttributesImpl mAttributes = new AttributesImpl();
+    private final ArrayList<String> mOpenElements = new ArrayList<>();
+    // reused for decoding text and attribute values containing entities
+    private final StringBuilder mDecodeBuffer = new StringBuilder();
+    private char[] mDecodedChars = new char[256];
+    private int mOpenInlineContainers;
+    private int mOpenAnchors;
+    private int mPos;
+
+    /**
+     * Parses the given HTML, reporting its contents to the handler.
+     *
+     * @throws MalformedHtmlException if the input isn't well-formed enough to be parsed
+     * without TagSoup's error recovery. Events may already have been reported to the handler
+     * in that case.
+     */
+    static void parse(String source, ContentHandler handler) throws SAXException {
+        new GitHubHtmlTokenizer(source, handler).parse();
+    }
+
+    private GitHubHtmlTokenizer(String source, ContentHandler handler) {
+        mSource = source;
+        mChars = source.toCharArray();
+        mHandler = handler;
+    }
+
+    private void parse() throws SAXException {
+        mHandler.startDocument();
+        while (mPos < mChars.length) {
+            int tagStart = mSource.indexOf('<', mPos);
+            if (tagStart < 0) {
+                tagStart = mChars.length;
+            }
+            if (tagStart > mPos) {
+                handleText(mPos, tagStart);
+            }
+            mPos = tagStart;
+            if (mPos < mChars.length) {
+                parseMarkup();
+            }
+        }
+        if (!mOpenElements.isEmpty()) {
+            throw new MalformedHtmlException("Unclosed element " + currentElement(), mPos);
+        }
+        mHandler.endDocument();
+    }
+
+    private void parseMarkup() throws SAXException {
+        int next = mPos + 1;
+        if (next >= mChars.length) {
+            throw new MalformedHtmlException("Unexpected end of input", mPos);
+        }
+        char c = mChars[next];
+        if (c == '!') {
+            skipDeclarationOrComment();
+        } else if (c == '/') {
+            mPos = next + 1;
+            String name = readName();
+            skipWhitespace();
+            expect('>');
+            handleEndTag(name);
+        } else if (isAsciiLetter(c)) {
+            mPos = next;
+            parseStartTag();
+        } else {
+            // TagSoup treats this as text, but GitHub would have escaped it
+            throw new MalformedHtmlException("Unescaped '<'", mPos);
+        }
+    }
+
+    private void skipDeclarationOrComment() throws SAXException {
+        final int end;
+        if (mSource.startsWith("<!--", mPos)) {
+            int commentEnd = mSource.indexOf("-->", mPos + 4);
+            end = commentEnd >= 0 ? commentEnd + 3 : -1;
+        } else if (mSource.regionMatches(true, mPos, "<!doctype", 0, 9)) {
+            int declarationEnd = mSource.indexOf('>', mPos);
+            end = declarationEnd >= 0 ? declarationEnd + 1 : -1;
+        } else {
+            throw new MalformedHtmlException("Unsupported declaration", mPos);
+        }
+        if (end < 0) {
+            throw new MalformedHtmlException("Unterminated declaration", mPos);
+        }
+        mPos = end;
+    }
+
+    private void parseStartTag() throws SAXException {
+        int tagStart = mPos - 1;
+        String name = readName();
+        boolean selfClosing = false;
+
+        mAttributes.clear();
+        while (true) {
+            skipWhitespace();
+            if (mPos >= mChars.length) {
+                throw new MalformedHtmlException("Unterminated tag", tagStart);
+            }
+            char c = mChars[mPos];
+            if (c == '>') {
+                mPos++;
+                break;
+            } else if (c == '/') {
+                mPos++;
+                expect('>');
+                selfClosing = true;
+                break;
+            }
+            parseAttribute();
+        }
+
+        handleStartTag(name, selfClosing, tagStart);
+    }
+
+    private void parseAttribute() throws SAXException {
+        int nameStart = mPos;
+        while (mPos < mChars.length) {
+            char c = mChars[mPos];
+            if (isWhitespace(c) || c == '=' || c == '>' || c == '/'
+                    || c == '"' || c == '\'' || c == '<') {
+                break;
+            }
+            mPos++;
+        }
+        if (mPos == nameStart) {
+            throw new MalformedHtmlException("Invalid attribute", mPos);
+        }
+        String name = toLowerCase(mSource.substring(nameStart, mPos));
+
+        skipWhitespace();
+        final String value;
+        if (mPos < mChars.length && mChars[mPos] == '=') {
+            mPos++;
+            skipWhitespace();
+            value = readAttributeValue();
+        } else {
+            // TagSoup reports boolean attributes with their name as value
+            value = name;
+        }
+        mAttributes.addAttribute("", name, name, "CDATA", value);
+    }
+
+    private String readAttributeValue() throws SAXException {
+        if (mPos >= mChars.length) {
+            throw new MalformedHtmlException("Missing attribute value", mPos);
+        }
+        char quote = mChars[mPos];
+        final int start, end;
+        if (quote == '"' || quote == '\'') {
+            start = mPos + 1;
+            end = mSource.indexOf(quote, start);
+            if (end < 0) {
+                throw new MalformedHtmlException("Unterminated attribute value", mPos);
+            }
+            mPos = end + 1;
+        } else {
+            start = mPos;
+            while (mPos < mChars.length && !isWhitespace(mChars[mPos]) && mChars[mPos] != '>') {
+                mPos++;
+            }
+            end = mPos;
+        }
+
+        int ampersand = mSource.indexOf('&', start);
+        if (ampersand < 0 || ampersand >= end) {
+            return mSource.substring(start, end);
+        }
+        decodeEntities(start, end);
+        return mDecodeBuffer.toString();
+    }
+
+    private void handleStartTag(String name, boolean selfClosing, int position)
+            throws SAXException {
+        String parent = currentElement();
+        if (UNSUPPORTED_ELEMENTS.contains(name) || name.indexOf(':') >= 0) {
+            throw new MalformedHtmlException("Unsupported element " + name, position);
+        }
+        Set<String> allowedChildren = parent != null ? ALLOWED_CHILDREN.get(parent) : null;
+        if (allowedChildren != null && !allowedChildren.contains(name)) {
+            throw new MalformedHtmlException(name + " not allowed in " + parent, position);
+        }
+        Set<String> requiredParents = REQUIRED_PARENTS.get(name);
+        if (requiredParents != null && (parent == null || !requiredParents.contains(parent))) {
+            throw new MalformedHtmlException(name + " not allowed in " + parent, position);
+        }
+        if (mOpenInlineContainers > 0 && BLOCK_ELEMENTS.contains(name)) {
+            throw new MalformedHtmlException("Block element " + name + " in inline element",
+                    position);
+        }
+        if (mOpenAnchors > 0 && name.equals("a")) {
+            throw new MalformedHtmlException("Nested link", position);
+        }
+
+        mHandler.startElement("", name, name, mAttributes);
+        if (VOID_ELEMENTS.contains(name)) {
+            // TagSoup reports an end for every void element
+            mHandler.endElement("", name, name);
+        } else if (selfClosing) {
+            throw new MalformedHtmlException("Self-closing non-void element " + name, position);
+        } else {
+            mOpenElements.add(name);
+            if (INLINE_CONTAINERS.contains(name)) {
+                mOpenInlineContainers++;
+            }
+            if (name.equals("a")) {
+                mOpenAnchors++;
+            }
+        }
+    }
+
+    private void handleEndTag(String name) throws SAXException {
+        if (!name.equals(currentElement())) {
+            throw new MalformedHtmlException("Unexpected end of " + name
+                    + ", expected end of " + currentElement(), mPos);
+        }
+        mOpenElements.remove(mOpenElements.size() - 1);
+        if (INLINE_CONTAINERS.contains(name)) {
+            mOpenInlineContainers--;
+        }
+        if (name.equals("a")) {
+            mOpenAnchors--;
+        }
+        mHandler.endElement("", name, name);
+    }
+
+    private void handleText(int start, int end) throws SAXException {
+        String parent = currentElement();
+        if (parent != null && ALLOWED_CHILDREN.containsKey(parent)) {
+            for (int i = start; i < end; i++) {
+                if (!isWhitespace(mChars[i])) {
+                    throw new MalformedHtmlException("Text not allowed in " + parent, i);
+                }
+            }
+            // TagSoup drops whitespace where no text is allowed
+            return;
+        }
+
+        int ampersand = mSource.indexOf('&', start);
+        if (ampersand < 0 || ampersand >= end) {
+            mHandler.characters(mChars, start, end - start);
+            return;
+        }
+
+        decodeEntities(start, end);
+        int length = mDecodeBuffer.length();
+        if (mDecodedChars.length < length) {
+            mDecodedChars = new char[Math.max(length, mDecodedChars.length * 2)];
+        }
+        mDecodeBuffer.getChars(0, length, mDecodedChars, 0);
+        mHandler.characters(mDecodedChars, 0, length);
+    }
+
+    /**
+     * Decodes the given range of the source into {@link #mDecodeBuffer}.
+     */
+    private void decodeEntities(int start, int end) throws SAXException {
+        mDecodeBuffer.setLength(0);
+        int pos = start;
+        while (pos < end) {
+            int ampersand = mSource.indexOf('&', pos);
+            if (ampersand < 0 || ampersand >= end) {
+                mDecodeBuffer.append(mChars, pos, end - pos);
+                break;
+            }
+            mDecodeBuffer.append(mChars, pos, ampersand - pos);
+            pos = decodeEntity(ampersand, end);
+        }
+    }
+
+    /**
+     * Decodes the entity starting at the given position into {@link #mDecodeBuffer}.
+     *
+     * @return The position after the entity
+     */
+    private int decodeEntity(int ampersand, int end) throws SAXException {
+        int pos = ampersand + 1;
+        if (pos < end && mChars[pos] == '#') {
+            pos++;
+            int radix = 10;
+            if (pos < end && (mChars[pos] == 'x' || mChars[pos] == 'X')) {
+                radix = 16;
+                pos++;
+            }
+            int digitsStart = pos;
+            int codePoint = 0;
+            while (pos < end && Character.digit(mChars[pos], radix) >= 0) {
+                codePoint = codePoint * radix + Character.digit(mChars[pos], radix);
+                if (codePoint > Character.MAX_CODE_POINT) {
+                    throw new MalformedHtmlException("Invalid character reference", ampersand);
+                }
+                pos++;
+            }
+            // TagSoup maps C1 control characters to Windows-1252, don't bother with those
+            if (pos == digitsStart || pos >= end || mChars[pos] != ';'
+                    || codePoint == 0 || (codePoint >= 0x80 && codePoint < 0xa0)
+                    || (codePoint >= Character.MIN_SURROGATE
+                            && codePoint <= Character.MAX_SURROGATE)) {
+                throw new MalformedHtmlException("Invalid character reference", ampersand);
+            }
+            mDecodeBuffer.appendCodePoint(codePoint);
+            return pos + 1;
+        }
+
+        int nameStart = pos;
+        while (pos < end && (isAsciiLetter(mChars[pos]) || isAsciiDigit(mChars[pos]))) {
+            pos++;
+        }
+        if (pos == nameStart) {
+            // not an entity, TagSoup keeps the ampersand as is
+            mDecodeBuffer.append('&');
+            return nameStart;
+        }
+        Character decoded = pos < end && mChars[pos] == ';'
+                ? NAMED_ENTITIES.get(mSource.substring(nameStart, pos)) : null;
+        if (decoded == null) {
+            throw new MalformedHtmlException("Unsupported entity", ampersand);
+        }
+        mDecodeBuffer.append(decoded.charValue());
+        return pos + 1;
+    }
+
+    private String readName() throws SAXException {
+        int start = mPos;
+        while (mPos < mChars.length) {
+            char c = mChars[mPos];
+            if (!isAsciiLetter(c) && !isAsciiDigit(c) && c != '-' && c != ':') {
+                break;
+            }
+            mPos++;
+        }
+        if (mPos == start) {
+            throw new MalformedHtmlException("Missing element name", start);
+        }
+        return toLowerCase(mSource.substring(start, mPos));
+    }
+
+    private void expect(char c) throws SAXException {
+        if (mPos >= mChars.length || mChars[mPos] != c) {
+            throw new MalformedHtmlException("Expected '" + c + "'", mPos);
+        }
+        mPos++;
+    }
+
+    private void skipWhitespace() {
+        while (mPos < mChars.length && isWhitespace(mChars[mPos])) {
+            mPos++;
+        }
+    }
+
+    private String currentElement() {
+        return mOpenElements.isEmpty() ? null : mOpenElements.get(mOpenElements.size() - 1);
+    }
+
+    private static String toLowerCase(String s) {
+        // doesn't allocate for the usual, already lower case names
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static Set<String> setOf(String... elements) {
+        return new HashSet<>(Arrays.asList(elements));
+    }
+}
@@ -44,6 +44,7 @@ import android.text.style.SubscriptSpan;
 import android.text.style.SuperscriptSpan;
 import android.text.style.TypefaceSpan;
 import android.text.style.UnderlineSpan;
+import android.util.Log;
 
 import com.gh4a.R;
 import com.gh4a.widget.LinkSpan;
@@ -55,21 +56,27 @@ import org.xml.sax.ContentHandler;
 import org.xml.sax.InputSource;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Optional;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 import androidx.core.content.ContextCompat;
 
 import static android.graphics.Paint.Style.FILL;
 
 public class HtmlUtils {
+    private static final String TAG = "HtmlUtils";
+
     public static void writeScriptInclude(StringBuilder builder, String scriptName) {
         builder.append("<script src='file:///android_asset/");
         builder.append(scriptName);
@@ -187,6 +194,23 @@ public class HtmlUtils {
         }
     }
 
+    private static class CheckboxSpan extends ImageSpan {
+        private final boolean mChecked;
+
+        public CheckboxSpan(Context context, boolean checked) {
+            super(makeCheckboxDrawable(context, checked), ImageSpan.ALIGN_BOTTOM);
+            mChecked = checked;
+        }
+
+        private static Drawable makeCheckboxDrawable(Context context, boolean checked) {
+            Drawable d = ContextCompat.getDrawable(context, checked
+                    ? R.drawable.checkbox_checked_small
+                    : R.drawable.checkbox_unchecked_small);
+            d.setBounds(0, 0, d.getIntrinsicWidth(), d.getIntrinsicHeight());
+            return d;
+        }
+    }
+
     /**
      * Rewrite relative URLs in HTML fetched e.g. from markdown files.
      */
@@ -238,7 +262,250 @@ public class HtmlUtils {
         if (TextUtils.isEmpty(html))
             return "";
 
-        return Html.fromHtml(context, html, imageGetter);
+        long start = System.nanoTime();
+        Spanned result = Html.fromHtml(context, html, imageGetter);
+        PerformanceMetrics.recordTiming(PerformanceMetrics.TIMING_HTML_ENCODE, null, start);
+        return result;
+    }
+
+    @VisibleForTesting
+    static Spanned encodeWithTokenizer(Context context, String html, ImageGetter imageGetter)
+            throws GitHubHtmlTokenizer.MalformedHtmlException {
+        return Html.fromHtmlWithTokenizer(context, html, imageGetter);
+    }
+
+    @VisibleForTesting
+    static Spanned encodeWithTagSoup(Context context, String html, ImageGetter imageGetter) {
+        return Html.fromHtmlWithTagSoup(context, html, imageGetter);
+    }
+
+    // Span types in the serialized format, must not be changed (only appended to)
+    private static final int SPAN_STYLE = 1;
+    private static final int SPAN_RELATIVE_SIZE = 2;
+    private static final int SPAN_TYPEFACE = 3;
+    private static final int SPAN_FOREGROUND_COLOR = 4;
+    private static final int SPAN_BACKGROUND_COLOR = 5;
+    private static final int SPAN_UNDERLINE = 6;
+    private static final int SPAN_STRIKETHROUGH = 7;
+    private static final int SPAN_SUPERSCRIPT = 8;
+    private static final int SPAN_SUBSCRIPT = 9;
+    private static final int SPAN_ALIGNMENT = 10;
+    private static final int SPAN_BULLET = 11;
+    private static final int SPAN_LINK = 12;
+    private static final int SPAN_IMAGE = 13;
+    private static final int SPAN_CHECKBOX = 14;
+    private static final int SPAN_REPLY = 15;
+    private static final int SPAN_CODE_BLOCK = 16;
+    private static final int SPAN_NUMBERED_ITEM = 17;
+    private static final int SPAN_HORIZONTAL_LINE = 18;
+
+    /**
+     * Writes text created by {@link #encode(Context, String, ImageGetter)} in a form that
+     * can be read back by {@link #readEncoded(Context, DataInput, ImageGetter)}. As colors and
+     * sizes are stored as they are, the text can only be read back with the same theme and
+     * display configuration.
+     *
+     * @throws IOException if writing fails or the text contains a span that can't be written
+     */
+    static void writeEncoded(DataOutput out, Spanned text) throws IOException {
+        writeString(out, text.toString());
+        Object[] spans = text.getSpans(0, text.length(), Object.class);
+        int count = 0;
+        for (Object span : spans) {
+            if (!isConverterMark(span)) {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        // Spans are written (and read back) in their original order, which matters
+        // e.g. for drawing nested leading margins
+        for (Object span : spans) {
+            if (isConverterMark(span)) {
+                continue;
+            }
+            out.writeInt(text.getSpanStart(span));
+            out.writeInt(text.getSpanEnd(span));
+            out.writeInt(text.getSpanFlags(span));
+            writeSpan(out, span);
+        }
+    }
+
+    static Spanned readEncoded(Context context, DataInput in, ImageGetter imageGetter)
+            throws IOException {
+        SpannableStringBuilder text = new SpannableStringBuilder(readString(in));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int start = in.readInt();
+            int end = in.readInt();
+            int flags = in.readInt();
+            if (start < 0 || end < start || end > text.length()) {
+                throw new IOException("Invalid span range " + start + "-" + end);
+            }
+            text.setSpan(readSpan(context, in, imageGetter), start, end, flags);
+        }
+        return text;
+    }
+
+    private static boolean isConverterMark(Object span) {
+        // Unclosed marks (e.g. links without href) have no effect on the rendering
+        return span.getClass().getEnclosingClass() == HtmlToSpannedConverter.class;
+    }
+
+    /**
+     * Describes the attributes of a span that affect its rendering, so tests can compare
+     * spans created in different ways.
+     */
+    @VisibleForTesting
+    static String describeSpan(Object span) {
+        if (span instanceof StyleSpan) {
+            return "style=" + ((StyleSpan) span).getStyle();
+        } else if (span instanceof RelativeSizeSpan) {
+            return "size=" + ((RelativeSizeSpan) span).getSizeChange();
+        } else if (span instanceof TypefaceSpan) {
+            return "family=" + ((TypefaceSpan) span).getFamily();
+        } else if (span instanceof ForegroundColorSpan) {
+            return "color=" + Integer.toHexString(((ForegroundColorSpan) span).getForegroundColor());
+        } else if (span instanceof BackgroundColorSpan) {
+            return "color=" + Integer.toHexString(((BackgroundColorSpan) span).getBackgroundColor());
+        } else if (span instanceof AlignmentSpan) {
+            return "alignment=" + ((AlignmentSpan) span).getAlignment();
+        } else if (span instanceof LinkSpan) {
+            return "url=" + ((LinkSpan) span).getUrl();
+        } else if (span instanceof CheckboxSpan) {
+            return "checked=" + ((CheckboxSpan) span).mChecked;
+        } else if (span instanceof ImageSpan) {
+            return "source=" + ((ImageSpan) span).getSource();
+        } else if (span instanceof ReplySpan) {
+            ReplySpan replySpan = (ReplySpan) span;
+            return "margin=" + replySpan.mMargin + " size=" + replySpan.mSize
+                    + " color=" + Integer.toHexString(replySpan.mColor);
+        } else if (span instanceof CodeBlockSpan) {
+            return "color=" + Integer.toHexString(((CodeBlockSpan) span).mColor);
+        } else if (span instanceof NumberedItemSpan) {
+            NumberedItemSpan numberedItemSpan = (NumberedItemSpan) span;
+            return "number=" + numberedItemSpan.mNumber
+                    + " scaling=" + numberedItemSpan.mTextScaling;
+        } else if (span instanceof HorizontalLineSpan) {
+            HorizontalLineSpan lineSpan = (HorizontalLineSpan) span;
+            return "height=" + lineSpan.mHeight + " color=" + Integer.toHexString(lineSpan.mColor);
+        }
+        return "";
+    }
+
+    private static void writeSpan(DataOutput out, Object span) throws IOException {
+        if (span instanceof StyleSpan) {
+            out.writeByte(SPAN_STYLE);
+            out.writeInt(((StyleSpan) span).getStyle());
+        } else if (span instanceof RelativeSizeSpan) {
+            out.writeByte(SPAN_RELATIVE_SIZE);
+            out.writeFloat(((RelativeSizeSpan) span).getSizeChange());
+        } else if (span instanceof TypefaceSpan) {
+            out.writeByte(SPAN_TYPEFACE);
+            writeString(out, ((TypefaceSpan) span).getFamily());
+        } else if (span instanceof ForegroundColorSpan) {
+            out.writeByte(SPAN_FOREGROUND_COLOR);
+            out.writeInt(((ForegroundColorSpan) span).getForegroundColor());
+        } else if (span instanceof BackgroundColorSpan) {
+            out.writeByte(SPAN_BACKGROUND_COLOR);
+            out.writeInt(((BackgroundColorSpan) span).getBackgroundColor());
+        } else if (span instanceof UnderlineSpan) {
+            out.writeByte(SPAN_UNDERLINE);
+        } else if (span instanceof StrikethroughSpan) {
+            out.writeByte(SPAN_STRIKETHROUGH);
+        } else if (span instanceof SuperscriptSpan) {
+            out.writeByte(SPAN_SUPERSCRIPT);
+        } else if (span instanceof SubscriptSpan) {
+            out.writeByte(SPAN_SUBSCRIPT);
+        } else if (span instanceof AlignmentSpan) {
+            out.writeByte(SPAN_ALIGNMENT);
+            writeString(out, ((AlignmentSpan) span).getAlignment().name());
+        } else if (span instanceof BulletSpan) {
+            // The gap width can only be queried on P+, but it's always the default margin
+            out.writeByte(SPAN_BULLET);
+        } else if (span instanceof LinkSpan) {
+            out.writeByte(SPAN_LINK);
+            writeString(out, ((LinkSpan) span).getUrl());
+        } else if (span instanceof CheckboxSpan) {
+            out.writeByte(SPAN_CHECKBOX);
+            out.writeBoolean(((CheckboxSpan) span).mChecked);
+        } else if (span instanceof ImageSpan && ((ImageSpan) span).getSource() != null) {
+            out.writeByte(SPAN_IMAGE);
+            writeString(out, ((ImageSpan) span).getSource());
+        } else if (span instanceof ReplySpan) {
+            ReplySpan replySpan = (ReplySpan) span;
+            out.writeByte(SPAN_REPLY);
+            out.writeInt(replySpan.mMargin);
+            out.writeInt(replySpan.mSize);
+            out.writeInt(replySpan.mColor);
+        } else if (span instanceof CodeBlockSpan) {
+            out.writeByte(SPAN_CODE_BLOCK);
+            out.writeInt(((CodeBlockSpan) span).mColor);
+        } else if (span instanceof NumberedItemSpan) {
+            NumberedItemSpan numberedItemSpan = (NumberedItemSpan) span;
+            out.writeByte(SPAN_NUMBERED_ITEM);
+            out.writeInt(numberedItemSpan.mNumber);
+            out.writeFloat(numberedItemSpan.mTextScaling);
+        } else if (span instanceof HorizontalLineSpan) {
+            HorizontalLineSpan lineSpan = (HorizontalLineSpan) span;
+            out.writeByte(SPAN_HORIZONTAL_LINE);
+            out.writeFloat(lineSpan.mHeight);
+            out.writeInt(lineSpan.mColor);
+        } else {
+            throw new IOException("Unsupported span " + span.getClass().getName());
+        }
+    }
+
+    private static Object readSpan(Context context, DataInput in, ImageGetter imageGetter)
+            throws IOException {
+        int type = in.readByte();
+        switch (type) {
+            case SPAN_STYLE: return new StyleSpan(in.readInt());
+            case SPAN_RELATIVE_SIZE: return new RelativeSizeSpan(in.readFloat());
+            case SPAN_TYPEFACE: return new TypefaceSpan(readString(in));
+            case SPAN_FOREGROUND_COLOR: return new ForegroundColorSpan(in.readInt());
+            case SPAN_BACKGROUND_COLOR: return new BackgroundColorSpan(in.readInt());
+            case SPAN_UNDERLINE: return new UnderlineSpan();
+            case SPAN_STRIKETHROUGH: return new StrikethroughSpan();
+            case SPAN_SUPERSCRIPT: return new SuperscriptSpan();
+            case SPAN_SUBSCRIPT: return new SubscriptSpan();
+            case SPAN_ALIGNMENT:
+                try {
+                    return new AlignmentSpan.Standard(Layout.Alignment.valueOf(readString(in)));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e);
+                }
+            case SPAN_BULLET:
+                return new BulletSpan(context.getResources()
+                        .getDimensionPixelSize(R.dimen.bullet_span_margin));
+            case SPAN_LINK: return new LinkSpan(readString(in));
+            case SPAN_IMAGE: {
+                String source = readString(in);
+                return new ImageSpan(imageGetter.getDrawable(source), source);
+            }
+            case SPAN_CHECKBOX: return new CheckboxSpan(context, in.readBoolean());
+            case SPAN_REPLY: return new ReplySpan(in.readInt(), in.readInt(), in.readInt());
+            case SPAN_CODE_BLOCK: return new CodeBlockSpan(in.readInt());
+            case SPAN_NUMBERED_ITEM: return new NumberedItemSpan(in.readInt(), in.readFloat());
+            case SPAN_HORIZONTAL_LINE: return new HorizontalLineSpan(in.readFloat(), in.readInt());
+            default: throw new IOException("Unknown span type " + type);
+        }
+    }
+
+    private static void writeString(DataOutput out, String s) throws IOException {
+        // writeUTF() is limited to 64k
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
     /* a copy of the framework's HTML class, stripped down and extended for our use cases */
@@ -254,6 +521,32 @@ public class HtmlUtils {
 
         public static Spanned fromHtml(Context context,
                 String source, android.text.Html.ImageGetter imageGetter) {
+            // GitHub's HTML is well-formed, so it usually can be parsed without TagSoup
+            try {
+                return fromHtmlWithTokenizer(context, source, imageGetter);
+            } catch (GitHubHtmlTokenizer.MalformedHtmlException e) {
+                Log.d(TAG, "Falling back to TagSoup: " + e.getMessage());
+                return fromHtmlWithTagSoup(context, source, imageGetter);
+            }
+        }
+
+        public static Spanned fromHtmlWithTokenizer(Context context, String source,
+                android.text.Html.ImageGetter imageGetter)
+                throws GitHubHtmlTokenizer.MalformedHtmlException {
+            HtmlToSpannedConverter converter = new HtmlToSpannedConverter(context, imageGetter);
+            try {
+                GitHubHtmlTokenizer.parse(source, converter);
+            } catch (GitHubHtmlTokenizer.MalformedHtmlException e) {
+                throw e;
+            } catch (SAXException e) {
+                // The converter doesn't throw exceptions.
+                throw new RuntimeException(e);
+            }
+            return converter.convert();
+        }
+
+        public static Spanned fromHtmlWithTagSoup(Context context,
+                String source, android.text.Html.ImageGetter imageGetter) {
             Parser parser = new Parser();
             try {
                 parser.setProperty(Parser.schemaProperty, HtmlParser.schema);
@@ -262,8 +555,17 @@ public class HtmlUtils {
                 throw new RuntimeException(e);
             }
 
-            HtmlToSpannedConverter converter =
-                    new HtmlToSpannedConverter(context, source, imageGetter, parser);
+            HtmlToSpannedConverter converter = new HtmlToSpannedConverter(context, imageGetter);
+            parser.setContentHandler(converter);
+            try {
+                parser.parse(new InputSource(new StringReader(source)));
+            } catch (IOException e) {
+                // We are reading from a string. There should not be IO problems.
+                throw new RuntimeException(e);
+            } catch (SAXException e) {
+                // TagSoup doesn't throw parse exceptions.
+                throw new RuntimeException(e);
+            }
             return converter.convert();
         }
     }
@@ -284,49 +586,15 @@ public class HtmlUtils {
         private final int mCodeBlockBackgroundColor;
 
         private final Context mContext;
-        private final String mSource;
-        private final XMLReader mReader;
         private final SpannableStringBuilder mSpannableStringBuilder;
         private final ImageGetter mImageGetter;
 
-        private static Pattern sTextAlignPattern;
-        private static Pattern sForegroundColorPattern;
-        private static Pattern sBackgroundColorPattern;
-        private static Pattern sTextDecorationPattern;
-
-        private static Pattern getTextAlignPattern() {
-            if (sTextAlignPattern == null) {
-                sTextAlignPattern = Pattern.compile("(?:\\s+|\\A)text-align\\s*:\\s*(\\S*)\\b");
-            }
-            return sTextAlignPattern;
-        }
-
-        private static Pattern getForegroundColorPattern() {
-            if (sForegroundColorPattern == null) {
-                sForegroundColorPattern = Pattern.compile(
-                        "(?:\\s+|\\A)color\\s*:\\s*(\\S*)\\b");
-            }
-            return sForegroundColorPattern;
-        }
-
-        private static Pattern getBackgroundColorPattern() {
-            if (sBackgroundColorPattern == null) {
-                sBackgroundColorPattern = Pattern.compile(
-                        "(?:\\s+|\\A)background(?:-color)?\\s*:\\s*(\\S*)\\b");
-            }
-            return sBackgroundColorPattern;
-        }
-
-        private static Pattern getTextDecorationPattern() {
-            if (sTextDecorationPattern == null) {
-                sTextDecorationPattern = Pattern.compile(
-                        "(?:\\s+|\\A)text-decoration\\s*:\\s*(\\S*)\\b");
-            }
-            return sTextDecorationPattern;
-        }
+        private final CssStyleScanner mStyleScanner = new CssStyleScanner();
+        // Marks of all elements that are currently open, most recently started last. Looking
+        // them up here is much cheaper than querying the spannable for them.
+        private final ArrayList<Object> mOpenMarks = new ArrayList<>();
 
-        public HtmlToSpannedConverter(Context context, String source,
-                ImageGetter imageGetter, Parser parser) {
+        public HtmlToSpannedConverter(Context context, ImageGetter imageGetter) {
             final Resources res = context.getResources();
             mDividerHeight = res.getDimension(R.dimen.divider_span_height);
             mDisplayTextScaling = res.getDisplayMetrics().scaledDensity;
@@ -336,24 +604,14 @@ public class HtmlUtils {
             mCodeBlockBackgroundColor = UiUtils.resolveColor(context, R.attr.colorCodeBackground);
 
             mContext = context;
-            mSource = source;
             mSpannableStringBuilder = new SpannableStringBuilder();
             mImageGetter = imageGetter;
-            mReader = parser;
         }
 
+        /**
+         * Finishes the conversion after the parser reported the whole document to this handler.
+         */
         public Spanned convert() {
-            mReader.setContentHandler(this);
-            try {
-                mReader.parse(new InputSource(new StringReader(mSource)));
-            } catch (IOException e) {
-                // We are reading from a string. There should not be IO problems.
-                throw new RuntimeException(e);
-            } catch (SAXException e) {
-                // TagSoup doesn't throw parse exceptions.
-                throw new RuntimeException(e);
-            }
-
             // Replace the placeholders for leading margin spans in reverse order, so the leading
             // margins are drawn in order of tag start
             Object[] obj = mSpannableStringBuilder.getSpans(0,
@@ -408,8 +666,8 @@ public class HtmlUtils {
         private void handleStartTag(String tag, Attributes attributes) {
             //noinspection StatementWithEmptyBody
             if (tag.equalsIgnoreCase("br")) {
-                // We don't need to handle this. TagSoup will ensure that there's a </br> for each <br>
-                // so we can safely emit the linebreaks when we handle the close tag.
+                // We don't need to handle this. Both TagSoup and GitHubHtmlTokenizer ensure that there's
+                // a </br> for each <br> so we can safely emit the linebreaks when we handle the close tag.
             } else if (tag.equalsIgnoreCase("p")) {
                 startBlockElement(attributes);
                 startCssStyle(attributes);
@@ -424,11 +682,7 @@ public class HtmlUtils {
             } else if (tag.equalsIgnoreCase("input")) {
                 if ("checkbox".equalsIgnoreCase(attributes.getValue("", "type"))) {
                     boolean checked = attributes.getIndex("", "checked") >= 0;
-                    Drawable d = ContextCompat.getDrawable(mContext, checked
-                            ? R.drawable.checkbox_checked_small
-                            : R.drawable.checkbox_unchecked_small);
-                    d.setBounds(0, 0, d.getIntrinsicWidth(), d.getIntrinsicHeight());
-                    ImageSpan span = new ImageSpan(d, ImageSpan.ALIGN_BOTTOM);
+                    ImageSpan span = new CheckboxSpan(mContext, checked);
 
                     mSpannableStringBuilder.append("  ");
                     mSpannableStringBuilder.setSpan(span, mSpannableStringBuilder.length() - 2,
@@ -630,17 +884,13 @@ public class HtmlUtils {
             start(new BlockElement(newlines, getBlockElementTypeFor(attributes)));
 
             String style = attributes.getValue("", "style");
-            if (style != null) {
-                Matcher m = getTextAlignPattern().matcher(style);
-                if (m.find()) {
-                    String alignment = m.group(1);
-                    if (alignment.equalsIgnoreCase("start")) {
-                        start(new Alignment(Layout.Alignment.ALIGN_NORMAL));
-                    } else if (alignment.equalsIgnoreCase("center")) {
-                        start(new Alignment(Layout.Alignment.ALIGN_CENTER));
-                    } else if (alignment.equalsIgnoreCase("end")) {
-                        start(new Alignment(Layout.Alignment.ALIGN_OPPOSITE));
-                    }
+            if (style != null && mStyleScanner.find(style, "text-align")) {
+                if (mStyleScanner.valueEquals("start")) {
+                    start(new Alignment(Layout.Alignment.ALIGN_NORMAL));
+                } else if (mStyleScanner.valueEquals("center")) {
+                    start(new Alignment(Layout.Alignment.ALIGN_CENTER));
+                } else if (mStyleScanner.valueEquals("end")) {
+                    start(new Alignment(Layout.Alignment.ALIGN_OPPOSITE));
                 }
             }
         }
@@ -771,27 +1021,37 @@ public class HtmlUtils {
         }
 
         private void endCodeSnippetLine(Code codeMark) {
-            mSpannableStringBuilder.removeSpan(getLast(Pre.class));
+            removeMark(getLast(Pre.class));
             setSpanFromMark(codeMark, new TypefaceSpan("monospace"), new CodeBlockSpan(codeMark.color()));
         }
 
         private <T> T getLast(Class<T> kind) {
-        /*
-         * This knows that the last returned object from getSpans()
-         * will be the most recently added.
-         */
-            T[] objs = mSpannableStringBuilder.getSpans(0, mSpannableStringBuilder.length(), kind);
+            for (int i = mOpenMarks.size() - 1; i >= 0; i--) {
+                Object mark = mOpenMarks.get(i);
+                if (mark.getClass() == kind) {
+                    return kind.cast(mark);
+                }
+            }
+            return null;
+        }
 
-            if (objs.length == 0) {
-                return null;
-            } else {
-                return objs[objs.length - 1];
+        private void removeMark(Object mark) {
+            if (mark == null) {
+                return;
             }
+            // Compare by identity, as records with equal values may be open at the same time
+            for (int i = mOpenMarks.size() - 1; i >= 0; i--) {
+                if (mOpenMarks.get(i) == mark) {
+                    mOpenMarks.remove(i);
+                    break;
+                }
+            }
+            mSpannableStringBuilder.removeSpan(mark);
         }
 
         private void setSpanFromMark(Object mark, Object... spans) {
             int where = mSpannableStringBuilder.getSpanStart(mark);
-            mSpannableStringBuilder.removeSpan(mark);
+            removeMark(mark);
             int len = mSpannableStringBuilder.length();
             if (where != len) {
                 for (Object span : spans) {
@@ -806,6 +1066,7 @@ public class HtmlUtils {
         private void start(Object mark) {
             int len = mSpannableStringBuilder.length();
             mSpannableStringBuilder.setSpan(mark, len, len, Spannable.SPAN_INCLUSIVE_EXCLUSIVE);
+            mOpenMarks.add(mark);
         }
 
         private void end(Class<?> kind, Object... spans) {
@@ -817,30 +1078,27 @@ public class HtmlUtils {
 
         private void startCssStyle(Attributes attributes) {
             String style = attributes.getValue("", "style");
-            if (style != null) {
-                Matcher m = getForegroundColorPattern().matcher(style);
-                if (m.find()) {
-                    Integer c = parseColor(m.group(1));
-                    if (c != null) {
-                        start(new Foreground(c));
-                    }
+            if (style == null) {
+                return;
+            }
+            if (mStyleScanner.find(style, "color")) {
+                int c = mStyleScanner.parseColor();
+                if (c != CssStyleScanner.NO_COLOR) {
+                    start(new Foreground(c));
                 }
+            }
 
-                m = getBackgroundColorPattern().matcher(style);
-                if (m.find()) {
-                    Integer c = parseColor(m.group(1));
-                    if (c != null) {
-                        start(new Background(c));
-                    }
+            if (mStyleScanner.find(style, "background-color")
+                    || mStyleScanner.find(style, "background")) {
+                int c = mStyleScanner.parseColor();
+                if (c != CssStyleScanner.NO_COLOR) {
+                    start(new Background(c));
                 }
+            }
 
-                m = getTextDecorationPattern().matcher(style);
-                if (m.find()) {
-                    String textDecoration = m.group(1);
-                    if (textDecoration.equalsIgnoreCase("line-through")) {
-                        start(new Strikethrough());
-                    }
-                }
+            if (mStyleScanner.find(style, "text-decoration")
+                    && mStyleScanner.valueEquals("line-through")) {
+                start(new Strikethrough());
             }
         }
 
@@ -15,24 +15,31 @@
  */
 package com.gh4a.utils;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
+import android.graphics.Picture;
 import android.graphics.Point;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
+import android.graphics.drawable.PictureDrawable;
+import android.os.Build;
 import android.os.Handler;
+import android.os.Process;
 import android.text.Html.ImageGetter;
 import android.text.Spanned;
+import android.text.Layout;
 import android.text.TextUtils;
 import android.text.style.ImageSpan;
 import android.util.DisplayMetrics;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.widget.TextView;
 
@@ -42,7 +49,8 @@ import com.gh4a.R;
 import com.gh4a.ServiceFactory;
 import com.gh4a.fragment.SettingsFragment;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.lang.ref.WeakReference;
@@ -51,6 +59,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.graphics.drawable.DrawableWrapperCompat;
@@ -60,6 +74,10 @@ import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
 import pl.droidsonroids.gif.GifDrawable;
 
 public class HttpImageGetter {
@@ -123,104 +141,248 @@ public class HttpImageGetter {
         }
     }
 
-    private static class PlaceholderDrawable extends DrawableWrapperCompat implements Runnable {
+    private static class PlaceholderDrawable extends DrawableWrapperCompat {
         private final String mUrl;
         private final ObjectInfo mInfo;
-        private Drawable mLoadedImage;
+        private final Drawable mPlaceholder;
+        private boolean mLoaded;
 
         public PlaceholderDrawable(String url, ObjectInfo info, Drawable placeholder) {
             super(placeholder);
             setBounds(0, 0, placeholder.getIntrinsicWidth(), placeholder.getIntrinsicHeight());
             mUrl = url;
             mInfo = info;
+            mPlaceholder = placeholder;
         }
 
         public String getUrl() {
             return mUrl;
         }
 
-        public void addLoadedImage(Drawable image, Handler handler) {
-            synchronized (this) {
-                mLoadedImage = image;
-                handler.post(this);
-            }
+        public boolean isLoaded() {
+            return mLoaded;
         }
 
-        @Override
-        public void run() {
-            setDrawable(mLoadedImage);
-            setBounds(0, 0, mLoadedImage.getIntrinsicWidth(), mLoadedImage.getIntrinsicHeight());
+        public void setLoadedImage(Drawable image) {
+            mLoaded = true;
+            setDrawable(image);
+            setBounds(0, 0, image.getIntrinsicWidth(), image.getIntrinsicHeight());
             mInfo.invalidateViewsForNewDrawable();
         }
+
+        public void reset() {
+            mLoaded = false;
+            setDrawable(mPlaceholder);
+            setBounds(0, 0, mPlaceholder.getIntrinsicWidth(), mPlaceholder.getIntrinsicHeight());
+        }
     }
 
-    private class ObjectInfo implements ImageGetter {
+    private class ObjectInfo implements ImageGetter,
+            ViewTreeObserver.OnScrollChangedListener, ViewTreeObserver.OnGlobalLayoutListener {
+        private final Object mId;
         private final ArrayList<WeakReference<TextView>> mViewRefs = new ArrayList<>();
         private final List<GifInfo> mGifs = new ArrayList<>();
-        private final List<WeakReference<Bitmap>> mBitmaps = new ArrayList<>();
+        // references obtained from DecodedImageCache, which need to be released
+        private final List<Bitmap> mBitmaps = new ArrayList<>();
+        private final Map<PlaceholderDrawable, Future<?>> mPendingLoads = new HashMap<>();
 
         private CharSequence mHtml;
-        private ImageGetterAsyncTask mTask;
-        private boolean mHasStartedImageLoad;
+        // encoding started by encodeInBackground(), picked up by the next bind()
+        private Future<CharSequence> mPendingEncode;
+        // text the currently tracked images (mGifs, mBitmaps) belong to
+        private CharSequence mLoadedHtml;
         private boolean mResumed = true;
 
+        ObjectInfo(Object id) {
+            mId = id;
+        }
+
         void bind(TextView view, String html) {
             addView(view);
 
+            if (mPendingEncode != null) {
+                finishPendingEncode();
+            }
             if (mHtml == null) {
-                encode(view.getContext(), html);
+                // We're on the main thread here, so don't wait for the disk cache
+                // (the result is still stored to it in the background)
+                CharSequence encoded = encodeWithCache(view.getContext(), html, false);
+                synchronized (this) {
+                    mHtml = encoded;
+                }
             }
 
             apply(mHtml);
 
-            if (!mHasStartedImageLoad) {
-                ImageSpan[] spans = getImageSpans();
-                if (spans.length > 0) {
-                    ArrayList<PlaceholderDrawable> imagesToLoad = new ArrayList<>();
-                    for (ImageSpan span : spans) {
-                        Drawable d = span.getDrawable();
-                        if (d instanceof PlaceholderDrawable) {
-                            imagesToLoad.add((PlaceholderDrawable) d);
-                        }
+            if (mLoadedHtml != mHtml) {
+                // The images of the previous text are no longer shown
+                discardLoadedImages();
+                mLoadedHtml = mHtml;
+            }
+
+            // More images are loaded when they're scrolled into view, see below
+            loadVisibleImages();
+        }
+
+        void unbind(TextView view) {
+            if (removeView(view) && mViewRefs.isEmpty()) {
+                // The object was scrolled out of view (the view is now used for
+                // a different one), so drop all images. If the object comes back into
+                // view, they're reloaded, usually from DecodedImageCache.
+                cancelPendingLoads();
+                resetLoadedImages();
+            }
+        }
+
+        @Override
+        public void onScrollChanged() {
+            loadVisibleImages();
+        }
+
+        @Override
+        public void onGlobalLayout() {
+            loadVisibleImages();
+        }
+
+        /**
+         * Starts loading the images which are on screen, or at most a screen height away
+         * from it.
+         */
+        private void loadVisibleImages() {
+            if (mDestroyed || TextUtils.isEmpty(mHtml)) {
+                return;
+            }
+            Spanned spanned = (Spanned) mHtml;
+            ImageSpan[] spans = getImageSpans();
+            for (int i = 0; i < mViewRefs.size(); i++) {
+                TextView view = mViewRefs.get(i).get();
+                Layout layout = view != null ? view.getLayout() : null;
+                // The view holds a copy of mHtml, but the span offsets are the same
+                if (layout == null || !view.isAttachedToWindow()) {
+                    continue;
+                }
+                view.getLocationInWindow(mTempLocation);
+                int windowHeight = view.getRootView().getHeight();
+                int top = -mTempLocation[1] - mMaxHeight - view.getTotalPaddingTop();
+                int bottom = windowHeight - mTempLocation[1] + mMaxHeight
+                        - view.getTotalPaddingTop();
+
+                for (ImageSpan span : spans) {
+                    Drawable d = span.getDrawable();
+                    if (!(d instanceof PlaceholderDrawable)) {
+                        continue;
+                    }
+                    PlaceholderDrawable placeholder = (PlaceholderDrawable) d;
+                    if (placeholder.isLoaded() || mPendingLoads.containsKey(placeholder)) {
+                        continue;
+                    }
+                    int line = layout.getLineForOffset(spanned.getSpanStart(span));
+                    if (layout.getLineBottom(line) >= top && layout.getLineTop(line) <= bottom) {
+                        mPendingLoads.put(placeholder,
+                                sLoadExecutor.submit(() -> loadImage(placeholder)));
                     }
-                    mTask = new ImageGetterAsyncTask(HttpImageGetter.this, this);
-                    mTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR,
-                            imagesToLoad.toArray(new PlaceholderDrawable[0]));
                 }
-                mHasStartedImageLoad = true;
             }
         }
-        void unbind(TextView view) {
-            removeView(view);
+
+        private void loadImage(PlaceholderDrawable placeholder) {
+            Drawable drawable;
+            try {
+                drawable = loadImageForUrl(placeholder.getUrl());
+            } catch (RuntimeException e) {
+                // e.g. broken image data the decoders choke on; onImageLoaded() must run
+                // in any case, otherwise the placeholder would stay pending forever
+                Log.e(Gh4Application.LOG_TAG, "Couldn't display image " + placeholder.getUrl(), e);
+                drawable = mErrorDrawable;
+            }
+            final Drawable result = drawable;
+            mHandler.post(() -> onImageLoaded(placeholder, result));
         }
 
         void encode(Context context, String html) {
-            CharSequence encoded = HtmlUtils.encode(context, html, this);
+            CharSequence encoded = encodeWithCache(context, html, true);
             synchronized (this) {
                 mHtml = encoded;
             }
         }
 
-        void onImageLoadDone() {
-            discardLoadedImages();
+        void encodeInBackground(Context context, String html) {
+            if (mHtml == null && mPendingEncode == null) {
+                mPendingEncode = sEncodeExecutor.submit(() -> encodeWithCache(context, html, true));
+            }
+        }
 
-            for (ImageSpan span : getImageSpans()) {
-                Drawable d = span.getDrawable();
-                if (d instanceof PlaceholderDrawable) {
-                    PlaceholderDrawable phd = (PlaceholderDrawable) d;
-                    d = phd.getDrawable();
+        private CharSequence encodeWithCache(Context context, String html, boolean loadCached) {
+            if (TextUtils.isEmpty(html)) {
+                return HtmlUtils.encode(context, html, this);
+            }
+            if (loadCached) {
+                long start = System.nanoTime();
+                Spanned cached = SpannedCache.load(context, mId, html, this);
+                if (cached != null) {
+                    PerformanceMetrics.recordTiming(PerformanceMetrics.TIMING_HTML_CACHE_LOAD,
+                            null, start);
+                    return cached;
                 }
-                if (d instanceof GifDrawable) {
-                    GifDrawable gd = (GifDrawable) d;
-                    if (mResumed) {
-                        gd.start();
-                    }
-                    mGifs.add(new GifInfo(gd, mViewRefs));
-                } else if (d instanceof LoadedBitmapDrawable) {
-                    BitmapDrawable bd = (BitmapDrawable) d;
-                    mBitmaps.add(new WeakReference<>(bd.getBitmap()));
+            }
+            CharSequence encoded = HtmlUtils.encode(context, html, this);
+            if (encoded instanceof Spanned) {
+                SpannedCache.store(context, mId, html, (Spanned) encoded);
+            }
+            return encoded;
+        }
+
+        private void finishPendingEncode() {
+            Future<CharSequence> pendingEncode = mPendingEncode;
+            mPendingEncode = null;
+            // If the encoding didn't start yet, encoding right away is faster than
+            // waiting for the encodings queued before it
+            if (pendingEncode.cancel(false)) {
+                return;
+            }
+            try {
+                CharSequence encoded = pendingEncode.get();
+                synchronized (this) {
+                    mHtml = encoded;
+                }
+            } catch (ExecutionException | InterruptedException e) {
+                Log.w(Gh4Application.LOG_TAG, "Encoding HTML in background failed", e);
+                // fall back to encoding it in bind()
+            }
+        }
+
+        private void cancelPendingEncode() {
+            if (mPendingEncode != null) {
+                mPendingEncode.cancel(false);
+                mPendingEncode = null;
+            }
+        }
+
+        private void onImageLoaded(PlaceholderDrawable placeholder, Drawable d) {
+            if (mPendingLoads.remove(placeholder) == null || mDestroyed) {
+                // canceled in the meantime
+                discardImage(d);
+                return;
+            }
+
+            placeholder.setLoadedImage(d);
+            if (d instanceof GifDrawable) {
+                GifDrawable gd = (GifDrawable) d;
+                if (mResumed) {
+                    gd.start();
                 }
+                mGifs.add(new GifInfo(gd, mViewRefs));
+            } else if (d instanceof LoadedBitmapDrawable) {
+                BitmapDrawable bd = (BitmapDrawable) d;
+                mBitmaps.add(bd.getBitmap());
+            }
+        }
+
+        private void cancelPendingLoads() {
+            for (Future<?> future : mPendingLoads.values()) {
+                future.cancel(true);
             }
+            mPendingLoads.clear();
         }
 
         void invalidateViewsForNewDrawable() {
@@ -256,28 +418,31 @@ public class HttpImageGetter {
             return spanned.getSpans(0, spanned.length(), ImageSpan.class);
         }
 
-        private void discardLoadedImages() {
-            for (WeakReference<Bitmap> ref : mBitmaps) {
-                Bitmap bitmap = ref.get();
-                if (bitmap != null) {
-                    bitmap.recycle();
+        private void resetLoadedImages() {
+            for (ImageSpan span : getImageSpans()) {
+                Drawable d = span.getDrawable();
+                if (d instanceof PlaceholderDrawable) {
+                    ((PlaceholderDrawable) d).reset();
                 }
             }
+            discardLoadedImages();
+        }
+
+        private void discardLoadedImages() {
+            for (Bitmap bitmap : mBitmaps) {
+                DecodedImageCache.release(bitmap);
+            }
             mBitmaps.clear();
             for (GifInfo info : mGifs) {
                 info.destroy();
             }
             mGifs.clear();
-            mHasStartedImageLoad = false;
         }
 
         void clearHtmlCache() {
-            if (mTask != null) {
-                mTask.cancel(true);
-                mTask = null;
-            }
+            cancelPendingLoads();
+            cancelPendingEncode();
             mHtml = null;
-            mHasStartedImageLoad = false;
         }
 
         private void apply(CharSequence text) {
@@ -303,28 +468,79 @@ public class HttpImageGetter {
             }
             if (!alreadyPresent) {
                 mViewRefs.add(new WeakReference<>(view));
+                ViewTreeObserver observer = view.getViewTreeObserver();
+                observer.addOnScrollChangedListener(this);
+                observer.addOnGlobalLayoutListener(this);
             }
         }
 
-        private void removeView(TextView view) {
+        private boolean removeView(TextView view) {
+            boolean removed = false;
             for (int i = 0; i < mViewRefs.size(); i++) {
                 TextView existing = mViewRefs.get(i).get();
                 if (existing == null || existing == view) {
                     mViewRefs.remove(i);
                 }
+                if (existing == view) {
+                    ViewTreeObserver observer = view.getViewTreeObserver();
+                    observer.removeOnScrollChangedListener(this);
+                    observer.removeOnGlobalLayoutListener(this);
+                    removed = true;
+                }
+            }
+            return removed;
+        }
+
+        private void removeAllViews() {
+            for (int i = mViewRefs.size() - 1; i >= 0; i--) {
+                TextView view = mViewRefs.get(i).get();
+                if (view != null) {
+                    removeView(view);
+                }
             }
+            mViewRefs.clear();
         }
 
         @Override
         public Drawable getDrawable(String source) {
-            return new PlaceholderDrawable(source, this, mLoadingDrawable);
+            // Also called on the encoder threads, so each placeholder gets its own loading
+            // drawable instead of changing bounds and callback of one the UI may be drawing
+            Drawable loading = mLoadingDrawableState.newDrawable(mContext.getResources());
+            return new PlaceholderDrawable(source, this, loading);
         }
     }
 
+    // Upper limits for the encoded size of downloaded images; bitmaps are decoded while
+    // downloading and GIFs are buffered on disk, so this mostly protects against bogus
+    // or malicious content
+    private static final long MAX_DOWNLOAD_SIZE = 25 * 1024 * 1024;
+    // SVGs need to be parsed as a whole, so keep their limit low
+    private static final long MAX_SVG_SIZE = 2 * 1024 * 1024;
+    // Downsample very tall images (e.g. long screenshots), which would otherwise take
+    // up large amounts of memory even when being narrower than the screen
+    private static final long MAX_DECODED_PIXELS = 4096 * 4096;
+
+    // Badges are usually around 100x20dp
+    private static final long MAX_SVG_PICTURE_PIXELS = 512 * 512;
+    private static final int MAX_CACHED_SVGS = 50;
+
+    private static final int LOADER_THREADS = 4;
+    private static final int THREAD_KEEP_ALIVE_SECONDS = 10;
+
+    // Shared by all instances, so that multiple screens (or list items) loading images
+    // don't overload the network or the memory
+    private static final ThreadPoolExecutor sLoadExecutor =
+            createExecutor("ImageLoader", LOADER_THREADS);
+    // Encoding is CPU bound, so a single thread is enough to stay ahead of the
+    // user scrolling through the encoded items
+    private static final ThreadPoolExecutor sEncodeExecutor = createExecutor("HtmlEncoder", 1);
+    private static final LruCache<String, SVG> sSvgCache = new LruCache<>(MAX_CACHED_SVGS);
+
     private final Handler mHandler = new Handler();
+    private final int[] mTempLocation = new int[2];
     private final Map<Object, ObjectInfo> mObjectInfos = new HashMap<>();
     private final Drawable mGifPlaceholderDrawable;
-    private final Drawable mLoadingDrawable;
+    private final Drawable.ConstantState mLoadingDrawableState;
     private final Drawable mErrorDrawable;
     private final OkHttpClient mClient;
 
@@ -332,8 +548,10 @@ public class HttpImageGetter {
 
     private final int mMaxWidth;
     private final int mMaxHeight;
+    private final boolean mIsLowRamDevice;
 
-    private boolean mDestroyed;
+    // also read by the loader threads
+    private volatile boolean mDestroyed;
 
     public HttpImageGetter(Context context) {
         mContext = context;
@@ -345,13 +563,15 @@ public class HttpImageGetter {
         mMaxWidth = size.x;
         mMaxHeight = size.y;
 
+        ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        mIsLowRamDevice = am.isLowRamDevice();
+
         mGifPlaceholderDrawable = ContextCompat.getDrawable(context, R.drawable.image_gif_placeholder);
         mGifPlaceholderDrawable.setBounds(0, 0,
                 mGifPlaceholderDrawable.getIntrinsicWidth(), mGifPlaceholderDrawable.getIntrinsicHeight());
 
-        mLoadingDrawable = ContextCompat.getDrawable(context, R.drawable.image_loading);
-        mLoadingDrawable.setBounds(0, 0,
-                mLoadingDrawable.getIntrinsicWidth(), mLoadingDrawable.getIntrinsicHeight());
+        mLoadingDrawableState = ContextCompat.getDrawable(context, R.drawable.image_loading)
+                .getConstantState();
 
         mErrorDrawable = ContextCompat.getDrawable(context, R.drawable.image_error);
         mErrorDrawable.setBounds(0, 0,
@@ -378,16 +598,41 @@ public class HttpImageGetter {
 
     public void destroy() {
         for (ObjectInfo info : mObjectInfos.values()) {
+            info.removeAllViews();
+            info.cancelPendingLoads();
+            info.cancelPendingEncode();
             info.discardLoadedImages();
         }
         mObjectInfos.clear();
         mDestroyed = true;
     }
 
+    /**
+     * Deletes the encoded text cached on disk, e.g. when logging out.
+     */
+    public static void clearEncodedTextCache(Context context) {
+        SpannedCache.clear(context);
+    }
+
+    /**
+     * Encodes the given HTML for a later {@link #bind(TextView, String, Object)} for the same
+     * id, using the disk cache. Must be called on a background thread.
+     */
     public void encode(final Context context, final Object id, final String html) {
         findOrCreateInfo(id).encode(context, html);
     }
 
+    /**
+     * Starts encoding the given HTML on a background thread, so that a later
+     * {@link #bind(TextView, String, Object)} for the same id doesn't need to encode it
+     * on the main thread. Must be called on the main thread.
+     */
+    public void encodeInBackground(final Context context, final Object id, final String html) {
+        if (!mDestroyed && !TextUtils.isEmpty(html)) {
+            findOrCreateInfo(id).encodeInBackground(context, html);
+        }
+    }
+
     public void bind(final TextView view, final String html, final Object id) {
         unbind(view);
         findOrCreateInfo(id).bind(view, html);
@@ -399,79 +644,83 @@ public class HttpImageGetter {
         }
     }
 
+    private static ThreadPoolExecutor createExecutor(String name, int threads) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, name + "-" + threadCount.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private ObjectInfo findOrCreateInfo(Object id) {
         ObjectInfo info = mObjectInfos.get(id);
         if (info == null) {
-            info = new ObjectInfo();
+            info = new ObjectInfo(id);
             mObjectInfos.put(id, info);
         }
         return info;
     }
 
-    private static class ImageGetterAsyncTask extends AsyncTask<PlaceholderDrawable, Void, Void> {
-        private final HttpImageGetter mImageGetter;
-        private final ObjectInfo mInfo;
-
-        public ImageGetterAsyncTask(HttpImageGetter getter, ObjectInfo info) {
-            mImageGetter = getter;
-            mInfo = info;
-        }
-
-        @Override
-        protected Void doInBackground(PlaceholderDrawable... params) {
-            for (PlaceholderDrawable placeholder : params) {
-                Drawable drawable = mImageGetter.loadImageForUrl(placeholder.getUrl());
-                if (drawable != null) {
-                    placeholder.addLoadedImage(drawable, mImageGetter.mHandler);
-                }
-            }
-            return null;
-        }
-
-        @Override
-        protected void onPostExecute(Void result) {
-            if (!isCancelled()) {
-                mInfo.onImageLoadDone();
-            }
+    private static void discardImage(Drawable d) {
+        if (d instanceof GifDrawable) {
+            ((GifDrawable) d).recycle();
+        } else if (d instanceof LoadedBitmapDrawable) {
+            DecodedImageCache.release(((BitmapDrawable) d).getBitmap());
         }
     }
 
     private Drawable loadImageForUrl(String source) {
         HttpUrl url = source != null ? HttpUrl.parse(source) : null;
-        Bitmap bitmap = null;
-
-        if (!mDestroyed && url != null) {
+        Resources res = mContext.getResources();
+        String cacheKey = DecodedImageCache.makeKey(source, mMaxWidth,
+                res.getDisplayMetrics().densityDpi);
+        Bitmap bitmap = !mDestroyed && url != null ? DecodedImageCache.acquire(cacheKey) : null;
+        boolean fromCache = bitmap != null;
+        // Parsed SVGs are cached separately, as they might be rendered into a picture
+        // or need to be rendered in a different size
+        SVG svg = bitmap == null && url != null ? getCachedSvg(source) : null;
+
+        if (bitmap == null && svg == null && !mDestroyed && url != null) {
             Request request = new Request.Builder()
                     .url(url)
                     .build();
             try (Response response = mClient.newCall(request).execute()) {
-                if (response.body() != null) {
-                    byte[] responseBody = response.body().bytes();
-                    // ByteArrayInputStream supports marking, which is required for
-                    // URLConnection.guessContentTypeFromStream to work
-                    InputStream is = new ByteArrayInputStream(responseBody);
-                    MediaType mediaType = response.body().contentType();
+                ResponseBody body = response.body();
+                if (body != null) {
+                    BufferedSource bodySource = SizeLimitedSource.limit(body.source(),
+                            body.contentLength(), MAX_DOWNLOAD_SIZE);
+                    MediaType mediaType = body.contentType();
                     String mime = mediaType != null ? mediaType.toString() : null;
                     if (mime == null) {
                         mime = URLConnection.guessContentTypeFromName(source);
                     }
                     if (mime == null) {
-                        mime = URLConnection.guessContentTypeFromStream(is);
+                        // BufferedInputStream supports marking, which is required for
+                        // URLConnection.guessContentTypeFromStream to work
+                        mime = URLConnection.guessContentTypeFromStream(
+                                new BufferedInputStream(bodySource.peek().inputStream()));
                     }
                     if (mime != null && mime.startsWith("image/svg")) {
-                        bitmap = renderSvgToBitmap(mContext.getResources(), is);
+                        BufferedSource svgSource = SizeLimitedSource.limit(bodySource,
+                                body.contentLength(), MAX_SVG_SIZE);
+                        svg = parseSvg(source, svgSource.inputStream());
                     } else {
                         boolean isGif = mime != null && mime.startsWith("image/gif");
                         if (isGif) {
+                            // Decide before downloading anything
                             if (canLoadGif()) {
-                                GifDrawable d = new GifDrawable(responseBody);
+                                GifDrawable d = loadGif(bodySource);
                                 d.setBounds(0, 0, d.getIntrinsicWidth(), d.getIntrinsicHeight());
                                 return d;
                             } else {
                                 return mGifPlaceholderDrawable;
                             }
                         } else {
-                            bitmap = getBitmap(responseBody);
+                            bitmap = getBitmap(bodySource, url);
                         }
                     }
                 }
@@ -481,9 +730,21 @@ public class HttpImageGetter {
             }
         }
 
+        if (svg != null && !mDestroyed) {
+            SvgRenderSize size = getSvgRenderSize(res, svg);
+            Drawable picture = renderSvgToPicture(svg, size);
+            if (picture != null) {
+                return picture;
+            }
+            bitmap = renderSvgToBitmap(res, svg, size);
+        }
+        if (bitmap != null && !fromCache) {
+            bitmap = DecodedImageCache.put(cacheKey, bitmap);
+        }
+
         synchronized (this) {
             if (mDestroyed && bitmap != null) {
-                bitmap.recycle();
+                DecodedImageCache.release(bitmap);
                 bitmap = null;
             }
         }
@@ -492,7 +753,7 @@ public class HttpImageGetter {
             return mErrorDrawable;
         }
 
-        BitmapDrawable drawable = new LoadedBitmapDrawable(mContext.getResources(), bitmap);
+        BitmapDrawable drawable = new LoadedBitmapDrawable(res, bitmap);
         drawable.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
         return drawable;
     }
@@ -511,13 +772,34 @@ public class HttpImageGetter {
         }
     }
 
-    private Bitmap getBitmap(final byte[] image) {
+    private GifDrawable loadGif(BufferedSource source) throws IOException {
+        // Let the GIF decoder read from a file instead of keeping the whole,
+        // possibly huge animation in memory
+        File file = File.createTempFile("image", ".gif", mContext.getCacheDir());
+        try {
+            try (BufferedSink sink = Okio.buffer(Okio.sink(file))) {
+                sink.writeAll(source);
+            }
+            // The decoder keeps the file open, so it's fine to delete it right away
+            return new GifDrawable(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private Bitmap getBitmap(final BufferedSource source, final HttpUrl url) {
         final BitmapFactory.Options options = new BitmapFactory.Options();
         options.inJustDecodeBounds = true;
-        BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        // Only the header is needed for the bounds, which stays buffered
+        // in the source for the actual decoding pass
+        BitmapFactory.decodeStream(source.peek().inputStream(), null, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
 
         int scale = 1;
-        while (options.outWidth >= mMaxWidth) {
+        while (options.outWidth >= mMaxWidth
+                || (long) options.outWidth * options.outHeight > MAX_DECODED_PIXELS) {
             options.outWidth /= 2;
             options.outHeight /= 2;
             scale *= 2;
@@ -527,59 +809,152 @@ public class HttpImageGetter {
         options.inDither = false;
         options.inSampleSize = scale;
 
-        return BitmapFactory.decodeByteArray(image, 0, image.length, options);
+        if (mIsLowRamDevice && "image/jpeg".equals(options.outMimeType)) {
+            // JPEGs are always opaque, so we only lose some color precision
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            // We never modify the images, so keep them in graphics memory only instead of
+            // having them in the Java heap as well. Those can't be reused for decoding,
+            // so bypass the pool.
+            options.inPreferredConfig = Bitmap.Config.HARDWARE;
+            return BitmapFactory.decodeStream(source.inputStream(), null, options);
+        }
+
+        // Should decoding need a second attempt, fetch the data again
+        return BitmapPool.decode(source, options, () -> refetch(url));
+    }
+
+    private BufferedSource refetch(HttpUrl url) throws IOException {
+        Request request = new Request.Builder()
+                .url(url)
+                .build();
+        Response response = mClient.newCall(request).execute();
+        try {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                throw new IOException("HTTP failure code " + response.code());
+            }
+            // Closing the returned source closes the response
+            return SizeLimitedSource.limit(body.source(), body.contentLength(), MAX_DOWNLOAD_SIZE);
+        } catch (IOException e) {
+            response.close();
+            throw e;
+        }
     }
 
-    private Bitmap renderSvgToBitmap(Resources res, InputStream is) {
+    private static SVG parseSvg(String url, InputStream is) {
         try {
             SVG svg = SVG.getFromInputStream(is);
             if (svg != null) {
                 svg.setRenderDPI(DisplayMetrics.DENSITY_DEFAULT);
-                Float density = res.getDisplayMetrics().density;
-                int docWidth = (int) (svg.getDocumentWidth() * density);
-                int docHeight = (int) (svg.getDocumentHeight() * density);
-                if (docWidth < 0 || docHeight < 0) {
-                    float aspectRatio = svg.getDocumentAspectRatio();
-                    if (aspectRatio > 0) {
-                        float heightForAspect = (float) mMaxWidth / aspectRatio;
-                        float widthForAspect = (float) mMaxHeight * aspectRatio;
-                        if (widthForAspect < heightForAspect) {
-                            docWidth = Math.round(widthForAspect);
-                            docHeight = mMaxHeight;
-                        } else {
-                            docWidth = mMaxWidth;
-                            docHeight = Math.round(heightForAspect);
-                        }
-                    } else {
-                        docWidth = mMaxWidth;
-                        docHeight = mMaxHeight;
-                    }
-
-                    // we didn't take density into account anymore when calculating docWidth
-                    // and docHeight, so don't scale with it and just let the renderer
-                    // figure out the scaling
-                    density = null;
+                synchronized (sSvgCache) {
+                    sSvgCache.put(url, svg);
                 }
+            }
+            return svg;
+        } catch (Exception e) {
+            return null;
+        }
+    }
 
-                while (docWidth >= mMaxWidth) {
-                    docWidth /= 2;
-                    docHeight /= 2;
-                    if (density != null) {
-                        density /= 2;
-                    }
-                }
+    private static SVG getCachedSvg(String url) {
+        synchronized (sSvgCache) {
+            return sSvgCache.get(url);
+        }
+    }
+
+    private static class SvgRenderSize {
+        final int width;
+        final int height;
+        // scale to apply to the canvas, or null to let the renderer figure out the scaling
+        final Float scale;
+
+        SvgRenderSize(int width, int height, Float scale) {
+            this.width = width;
+            this.height = height;
+            this.scale = scale;
+        }
+    }
 
-                Bitmap bitmap = Bitmap.createBitmap(docWidth, docHeight, Bitmap.Config.ARGB_8888);
-                Canvas canvas = new Canvas(bitmap);
-                if (density != null) {
-                    canvas.scale(density, density);
+    private SvgRenderSize getSvgRenderSize(Resources res, SVG svg) {
+        Float density = res.getDisplayMetrics().density;
+        int docWidth = (int) (svg.getDocumentWidth() * density);
+        int docHeight = (int) (svg.getDocumentHeight() * density);
+        if (docWidth < 0 || docHeight < 0) {
+            float aspectRatio = svg.getDocumentAspectRatio();
+            if (aspectRatio > 0) {
+                float heightForAspect = (float) mMaxWidth / aspectRatio;
+                float widthForAspect = (float) mMaxHeight * aspectRatio;
+                if (widthForAspect < heightForAspect) {
+                    docWidth = Math.round(widthForAspect);
+                    docHeight = mMaxHeight;
+                } else {
+                    docWidth = mMaxWidth;
+                    docHeight = Math.round(heightForAspect);
                 }
+            } else {
+                docWidth = mMaxWidth;
+                docHeight = mMaxHeight;
+            }
+
+            // we didn't take density into account anymore when calculating docWidth
+            // and docHeight, so don't scale with it and just let the renderer
+            // figure out the scaling
+            density = null;
+        }
+
+        while (docWidth >= mMaxWidth) {
+            docWidth /= 2;
+            docHeight /= 2;
+            if (density != null) {
+                density /= 2;
+            }
+        }
+        return new SvgRenderSize(docWidth, docHeight, density);
+    }
+
+    /**
+     * Records small SVGs (e.g. badges) into a picture, which is rendered at draw time
+     * and thus doesn't need a bitmap. Returns null for larger SVGs, which are cheaper
+     * to draw from a bitmap.
+     */
+    private Drawable renderSvgToPicture(SVG svg, SvgRenderSize size) {
+        if (size.width <= 0 || size.height <= 0
+                || (long) size.width * size.height > MAX_SVG_PICTURE_PIXELS) {
+            return null;
+        }
+        try {
+            Picture picture = new Picture();
+            Canvas canvas = picture.beginRecording(size.width, size.height);
+            if (size.scale != null) {
+                canvas.scale(size.scale, size.scale);
+            }
+            synchronized (svg) {
                 svg.renderToCanvas(canvas);
-                return bitmap;
             }
+            picture.endRecording();
+            PictureDrawable drawable = new PictureDrawable(picture);
+            drawable.setBounds(0, 0, size.width, size.height);
+            return drawable;
         } catch (Exception e) {
-            // fall through
+            return null;
+        }
+    }
+
+    private Bitmap renderSvgToBitmap(Resources res, SVG svg, SvgRenderSize size) {
+        try {
+            Bitmap bitmap = BitmapPool.obtain(size.width, size.height, Bitmap.Config.ARGB_8888);
+            bitmap.setDensity(res.getDisplayMetrics().densityDpi);
+            Canvas canvas = new Canvas(bitmap);
+            if (size.scale != null) {
+                canvas.scale(size.scale, size.scale);
+            }
+            synchronized (svg) {
+                svg.renderToCanvas(canvas);
+            }
+            return bitmap;
+        } catch (Exception e) {
+            return null;
         }
-        return null;
     }
 }
@@ -0,0 +1,285 @@
+package com.gh4a.utils;
+
+import androidx.annotation.NonNull;
+
+import com.gh4a.BuildConfig;
+import com.gh4a.ServiceFactory;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Collects network (per endpoint family) and rendering timings, so slowdowns can be
+ * attributed to either of them. Metrics are kept in memory only, and only collected in
+ * debug builds, which are the only ones able to show them.
+ */
+public class PerformanceMetrics {
+    public static final String TIMING_CONTENT_SHOWN = "content_shown";
+    public static final String TIMING_WEBVIEW_RENDERING = "webview_rendering";
+    public static final String TIMING_HTML_ENCODE = "html_encode";
+    public static final String TIMING_HTML_CACHE_LOAD = "html_cache_load";
+
+    public static final boolean ENABLED = BuildConfig.DEBUG;
+
+    // upper bounds of the histogram buckets in microseconds, the last bucket is open ended
+    private static final long[] BUCKET_LIMITS_US = {
+        1000, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000, 2500000, 5000000
+    };
+
+    public static class Histogram {
+        private final long[] mCounts = new long[BUCKET_LIMITS_US.length + 1];
+        private long mCount;
+        private long mSumUs;
+        private long mMaxUs;
+
+        synchronized void record(long durationUs) {
+            int bucket = 0;
+            while (bucket < BUCKET_LIMITS_US.length && durationUs > BUCKET_LIMITS_US[bucket]) {
+                bucket++;
+            }
+            mCounts[bucket]++;
+            mCount++;
+            mSumUs += durationUs;
+            mMaxUs = Math.max(mMaxUs, durationUs);
+        }
+
+        public synchronized long getCount() {
+            return mCount;
+        }
+
+        public synchronized double getAverageMs() {
+            return mCount > 0 ? mSumUs / 1000.0 / mCount : 0;
+        }
+
+        public synchronized double getMaxMs() {
+            return mMaxUs / 1000.0;
+        }
+
+        /**
+         * Returns an upper bound of the given percentile (0..1), as precise as the bucket
+         * layout allows.
+         */
+        public synchronized double getPercentileMs(double percentile) {
+            long target = (long) Math.ceil(mCount * percentile);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_LIMITS_US.length; i++) {
+                seen += mCounts[i];
+                if (seen >= target) {
+                    return Math.min(BUCKET_LIMITS_US[i], mMaxUs) / 1000.0;
+                }
+            }
+            return getMaxMs();
+        }
+
+        synchronized JSONObject toJson() throws JSONException {
+            JSONObject buckets = new JSONObject();
+            for (int i = 0; i < mCounts.length; i++) {
+                String label = i < BUCKET_LIMITS_US.length
+                        ? "le_" + BUCKET_LIMITS_US[i] / 1000.0 : "inf";
+                buckets.put(label, mCounts[i]);
+            }
+            return new JSONObject()
+                    .put("count", mCount)
+                    .put("avg_ms", getAverageMs())
+                    .put("p50_ms", getPercentileMs(0.5))
+                    .put("p90_ms", getPercentileMs(0.9))
+                    .put("max_ms", getMaxMs())
+                    .put("buckets_ms", buckets);
+        }
+    }
+
+    private static class EndpointStats {
+        final Histogram latency = new Histogram();
+        final AtomicLong bytesReceived = new AtomicLong();
+        final AtomicLong pagesFetched = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+    }
+
+    private static final ConcurrentHashMap<String, EndpointStats> sEndpoints =
+            new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Histogram> sTimings =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Application interceptor recording latency (until the response headers arrived), bytes
+     * received from the network and errors. Needs to be the innermost application interceptor,
+     * so that time spent waiting for other requests (rate limit, request coalescing) isn't
+     * counted.
+     */
+    public static final Interceptor INTERCEPTOR = chain -> {
+        if (!ENABLED) {
+            return chain.proceed(chain.request());
+        }
+        EndpointStats stats = getEndpointStats(chain.request().url());
+        long start = System.nanoTime();
+        final Response response;
+        try {
+            response = chain.proceed(chain.request());
+        } catch (IOException e) {
+            stats.errors.incrementAndGet();
+            throw e;
+        }
+        stats.latency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+
+        ResponseBody body = response.body();
+        Response networkResponse = response.networkResponse();
+        if (body == null || networkResponse == null || networkResponse.code() == 304) {
+            return response;
+        }
+        // Note this counts the (transparently) decompressed bytes
+        BufferedSource countingSource = Okio.buffer(new ForwardingSource(body.source()) {
+            @Override
+            public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+                long read = super.read(sink, byteCount);
+                if (read > 0) {
+                    stats.bytesReceived.addAndGet(read);
+                }
+                return read;
+            }
+        });
+        return response.newBuilder()
+                .body(ResponseBody.create(countingSource, body.contentType(), body.contentLength()))
+                .build();
+    };
+
+    public static void recordPageFetched(HttpUrl url) {
+        if (!ENABLED) {
+            return;
+        }
+        getEndpointStats(url).pagesFetched.incrementAndGet();
+    }
+
+    /**
+     * Records the time elapsed since {@code startNanos} (as obtained by
+     * {@link System#nanoTime()}) for the given timing.
+     *
+     * @param detail Optional detail (e.g. the screen) the timing is additionally recorded for
+     */
+    public static void recordTiming(String name, String detail, long startNanos) {
+        if (!ENABLED) {
+            return;
+        }
+        long durationUs = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+        getTiming(name).record(durationUs);
+        if (detail != null) {
+            getTiming(name + "/" + detail).record(durationUs);
+        }
+    }
+
+    public static void reset() {
+        sEndpoints.clear();
+        sTimings.clear();
+        CacheOutcomeTracker tracker = ServiceFactory.getCacheOutcomeTracker();
+        if (tracker != null) {
+            tracker.resetCounters();
+        }
+    }
+
+    public static JSONObject toJson() throws JSONException {
+        Map<String, CacheOutcomeTracker.Counters> outcomes = getOutcomeCounters();
+        JSONObject endpoints = new JSONObject();
+        for (Map.Entry<String, EndpointStats> entry : new TreeMap<>(sEndpoints).entrySet()) {
+            EndpointStats stats = entry.getValue();
+            JSONObject endpoint = new JSONObject()
+                    .put("latency", stats.latency.toJson())
+                    .put("bytes_received", stats.bytesReceived.get())
+                    .put("pages_fetched", stats.pagesFetched.get())
+                    .put("errors", stats.errors.get());
+            CacheOutcomeTracker.Counters counters = outcomes.get(entry.getKey());
+            if (counters != null) {
+                endpoint.put("outcomes", new JSONObject()
+                        .put("cache", counters.cacheHits.get())
+                        .put("not_modified", counters.notModified.get())
+                        .put("network", counters.fullResponses.get())
+                        .put("evicted_refetches", counters.evictedRefetches.get()));
+            }
+            endpoints.put(entry.getKey(), endpoint);
+        }
+
+        JSONObject timings = new JSONObject();
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(sTimings).entrySet()) {
+            timings.put(entry.getKey(), entry.getValue().toJson());
+        }
+
+        return new JSONObject()
+                .put("timestamp", System.currentTimeMillis())
+                .put("endpoints", endpoints)
+                .put("timings", timings);
+    }
+
+    /**
+     * Returns a human readable summary, one line per endpoint family and timing.
+     */
+    public static String getSummary() {
+        Map<String, CacheOutcomeTracker.Counters> outcomes = getOutcomeCounters();
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, EndpointStats> entry : new TreeMap<>(sEndpoints).entrySet()) {
+            EndpointStats stats = entry.getValue();
+            CacheOutcomeTracker.Counters counters = outcomes.get(entry.getKey());
+            sb.append(entry.getKey()).append('\n');
+            appendHistogram(sb, stats.latency);
+            sb.append(String.format(Locale.US, "  %d kB, %d pages, %d errors",
+                    stats.bytesReceived.get() / 1024, stats.pagesFetched.get(),
+                    stats.errors.get()));
+            if (counters != null) {
+                sb.append(String.format(Locale.US, ", cache/304/network %d/%d/%d",
+                        counters.cacheHits.get(), counters.notModified.get(),
+                        counters.fullResponses.get()));
+            }
+            sb.append("\n\n");
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(sTimings).entrySet()) {
+            sb.append(entry.getKey()).append('\n');
+            appendHistogram(sb, entry.getValue());
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static void appendHistogram(StringBuilder sb, Histogram histogram) {
+        sb.append(String.format(Locale.US, "  n=%d avg=%.1fms p50<=%.1fms p90<=%.1fms max=%.1fms\n",
+                histogram.getCount(), histogram.getAverageMs(), histogram.getPercentileMs(0.5),
+                histogram.getPercentileMs(0.9), histogram.getMaxMs()));
+    }
+
+    private static Map<String, CacheOutcomeTracker.Counters> getOutcomeCounters() {
+        CacheOutcomeTracker tracker = ServiceFactory.getCacheOutcomeTracker();
+        return tracker != null ? tracker.getCounters() : new TreeMap<>();
+    }
+
+    private static EndpointStats getEndpointStats(HttpUrl url) {
+        String family = CacheOutcomeTracker.getEndpointFamily(url);
+        EndpointStats stats = sEndpoints.get(family);
+        if (stats == null) {
+            sEndpoints.putIfAbsent(family, new EndpointStats());
+            stats = sEndpoints.get(family);
+        }
+        return stats;
+    }
+
+    private static Histogram getTiming(String name) {
+        Histogram histogram = sTimings.get(name);
+        if (histogram == null) {
+            sTimings.putIfAbsent(name, new Histogram());
+            histogram = sTimings.get(name);
+        }
+        return histogram;
+    }
+}
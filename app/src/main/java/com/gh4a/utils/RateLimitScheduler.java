@@ -0,0 +1,245 @@
+package com.gh4a.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gh4a.Gh4Application;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.List;
+
+import io.reactivex.Observable;
+import io.reactivex.subjects.BehaviorSubject;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Keeps track of the remaining API rate limit budget per auth identity and delays or defers
+ * low priority requests (background work, prefetches) when the budget runs low, so that the
+ * remaining budget is left for requests the user is waiting for.
+ */
+public class RateLimitScheduler implements Interceptor {
+    public enum Priority {
+        FOREGROUND,
+        LOW
+    }
+
+    public static class Budget {
+        public final int limit;
+        public final int remaining;
+        // epoch milliseconds
+        public final long resetTime;
+
+        Budget(int limit, int remaining, long resetTime) {
+            this.limit = limit;
+            this.remaining = remaining;
+            this.resetTime = resetTime;
+        }
+
+        public boolean isExhausted() {
+            return remaining <= 0 && resetTime > System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Thrown for low priority requests that were not executed to save the remaining
+     * rate limit budget.
+     */
+    public static class DeferredException extends IOException {
+        public final long retryAfter;
+
+        DeferredException(long retryAfter) {
+            super("Request deferred due to rate limit, retry after " + retryAfter);
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    private static final String RESOURCE_CORE = "core";
+    private static final String RESOURCE_SEARCH = "search";
+
+    // Foreground requests wait for short secondary rate limit penalties only,
+    // otherwise the user would just look at a spinner
+    private static final long MAX_FOREGROUND_WAIT_MS = 5000;
+    private static final long MAX_LOW_PRIORITY_WAIT_MS = 60000;
+    private static final long MAX_LOW_PRIORITY_SPACING_MS = 2000;
+
+    private static class State {
+        Budget budget;
+        long blockedUntil;
+    }
+
+    private final HashMap<String, State> mStates = new HashMap<>();
+    private final BehaviorSubject<Budget> mBudgetSubject = BehaviorSubject.create();
+
+    /**
+     * Emits the current budget of the core API resource for the active account
+     * whenever it changes. The last known budget is emitted right away on subscription.
+     */
+    public Observable<Budget> getBudget() {
+        return mBudgetSubject.hide();
+    }
+
+    /**
+     * Returns the last budget emitted by {@link #getBudget()}, or null if it isn't known yet.
+     */
+    @Nullable
+    public Budget getCurrentBudget() {
+        return mBudgetSubject.getValue();
+    }
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        Priority priority = request.tag(Priority.class);
+        if (priority == null) {
+            priority = Priority.FOREGROUND;
+        }
+        String key = makeKey(request);
+
+        long delay = computeDelay(key, priority);
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            if (chain.call().isCanceled()) {
+                throw new IOException("Canceled");
+            }
+        }
+
+        Response response = chain.proceed(request);
+        update(key, request, response);
+        return response;
+    }
+
+    private long computeDelay(String key, Priority priority) throws DeferredException {
+        final Budget budget;
+        final long blockedUntil;
+        synchronized (mStates) {
+            State state = mStates.get(key);
+            if (state == null) {
+                return 0;
+            }
+            budget = state.budget;
+            blockedUntil = state.blockedUntil;
+        }
+
+        long now = System.currentTimeMillis();
+        if (blockedUntil > now) {
+            long wait = blockedUntil - now;
+            long maxWait = priority == Priority.LOW
+                    ? MAX_LOW_PRIORITY_WAIT_MS : MAX_FOREGROUND_WAIT_MS;
+            if (wait <= maxWait) {
+                return wait;
+            }
+            if (priority == Priority.LOW) {
+                throw new DeferredException(blockedUntil);
+            }
+            // Let the server tell the user what's wrong
+            return 0;
+        }
+
+        if (budget == null || priority != Priority.LOW || budget.resetTime <= now) {
+            return 0;
+        }
+        if (budget.remaining <= getReserve(budget.limit)) {
+            throw new DeferredException(budget.resetTime);
+        }
+        if (budget.remaining <= budget.limit / 4) {
+            // Spread out the remaining low priority budget until the reset
+            return Math.min((budget.resetTime - now) / budget.remaining,
+                    MAX_LOW_PRIORITY_SPACING_MS);
+        }
+        return 0;
+    }
+
+    private void update(String key, Request request, Response response) {
+        // Responses served from the cache carry the rate limit headers from the time they
+        // were stored, which must not overwrite the live budget
+        response = response.networkResponse();
+        if (response == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long blockedUntil = 0;
+        String retryAfter = response.header("Retry-After");
+        if (retryAfter != null && (response.code() == HttpURLConnection.HTTP_FORBIDDEN
+                || response.code() == 429)) {
+            try {
+                blockedUntil = now + Long.parseLong(retryAfter.trim()) * 1000;
+            } catch (NumberFormatException e) {
+                // ignore, GitHub always sends a number of seconds
+            }
+        }
+
+        Budget budget = parseBudget(response);
+        synchronized (mStates) {
+            State state = mStates.get(key);
+            if (state == null) {
+                state = new State();
+                mStates.put(key, state);
+            }
+            if (budget != null) {
+                state.budget = budget;
+            }
+            if (blockedUntil > 0) {
+                state.blockedUntil = blockedUntil;
+            } else if (budget != null && budget.isExhausted()) {
+                state.blockedUntil = budget.resetTime;
+            }
+        }
+
+        if (budget != null && RESOURCE_CORE.equals(getResource(request, response))
+                && isActiveIdentity(request)) {
+            mBudgetSubject.onNext(budget);
+        }
+    }
+
+    private static Budget parseBudget(Response response) {
+        String limit = response.header("X-RateLimit-Limit");
+        String remaining = response.header("X-RateLimit-Remaining");
+        String reset = response.header("X-RateLimit-Reset");
+        if (limit == null || remaining == null || reset == null) {
+            return null;
+        }
+        try {
+            return new Budget(Integer.parseInt(limit), Integer.parseInt(remaining),
+                    Long.parseLong(reset) * 1000);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String getResource(Request request, Response response) {
+        String resource = response.header("X-RateLimit-Resource");
+        return resource != null ? resource : getResource(request);
+    }
+
+    private static String getResource(Request request) {
+        List<String> segments = request.url().pathSegments();
+        return !segments.isEmpty() && RESOURCE_SEARCH.equals(segments.get(0))
+                ? RESOURCE_SEARCH : RESOURCE_CORE;
+    }
+
+    private static String makeKey(Request request) {
+        return getResource(request) + "\n" + request.header("Authorization");
+    }
+
+    private static boolean isActiveIdentity(Request request) {
+        String token = Gh4Application.get().getAuthToken();
+        String auth = request.header("Authorization");
+        return token != null ? ("Token " + token).equals(auth) : auth == null || !auth.startsWith("Token ");
+    }
+
+    private static int getReserve(int limit) {
+        // Keep 10% of the budget for foreground requests
+        return Math.max(limit / 10, 1);
+    }
+}
@@ -96,6 +96,17 @@ public class RxUtils {
                 .observeOn(AndroidSchedulers.mainThread());
     }
 
+    /**
+     * Does the upstream work (usually network requests) on the I/O pool, and continues on the
+     * computation pool, which - other than the I/O pool - is bounded to the number of CPU cores.
+     * To be used before CPU bound post-processing of loaded data, like merging, sorting or
+     * constructing list items.
+     */
+    public static <T> Single<T> loadForProcessing(Single<T> upstream) {
+        return upstream.subscribeOn(Schedulers.io())
+                .observeOn(Schedulers.computation());
+    }
+
     public static <T> SingleTransformer<T, T> wrapForBackgroundTask(final BaseActivity activity,
             final @StringRes int dialogMessageResId, final @StringRes int errorMessageResId) {
         return wrapForBackgroundTask(activity, activity.getRootLayout(), dialogMessageResId,
@@ -57,13 +57,24 @@ public class SingleFactory {
 
     public static Single<NotificationListLoadResult> getNotifications(boolean all,
             boolean participating, boolean bypassCache) {
-        var service = ServiceFactory.getForFullPagedLists(NotificationService.class, bypassCache);
+        return getNotifications(all, participating,
+                ServiceFactory.getForFullPagedLists(NotificationService.class, bypassCache));
+    }
+
+    public static Single<NotificationListLoadResult> getNotificationsInBackground() {
+        return getNotifications(false, false, ServiceFactory.getForBackgroundWork(
+                NotificationService.class, false, ApiHelpers.MAX_PAGE_SIZE));
+    }
+
+    private static Single<NotificationListLoadResult> getNotifications(boolean all,
+            boolean participating, NotificationService service) {
         final Map<String, Object> options = new HashMap<>();
         options.put("all", all);
         options.put("participating", participating);
 
         return ApiHelpers.PageIterator
                 .toSingle(page -> service.getNotifications(options, page))
+                .compose(RxUtils::loadForProcessing)
                 .map(SingleFactory::notificationsToResult);
     }
 
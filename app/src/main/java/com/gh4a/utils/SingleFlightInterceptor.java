@@ -0,0 +1,124 @@
+package com.gh4a.utils;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Lets concurrent identical GET requests (same URL, Accept, Authorization and Cache-Control
+ * headers) share a single network call. The first request is executed, all requests arriving
+ * while it is in flight wait for it and get a copy of its response.
+ */
+public class SingleFlightInterceptor implements Interceptor {
+    private static class Flight {
+        final CountDownLatch done = new CountDownLatch(1);
+        int waiters;
+        Response response;
+        byte[] body;
+        Throwable error;
+        boolean canceled;
+    }
+
+    private final HashMap<String, Flight> mFlights = new HashMap<>();
+
+    @NonNull
+    @Override
+    public Response intercept(@NonNull Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!"GET".equals(request.method())) {
+            return chain.proceed(request);
+        }
+
+        String key = makeKey(request);
+        Flight flight;
+        boolean leader = false;
+        synchronized (mFlights) {
+            flight = mFlights.get(key);
+            if (flight == null) {
+                flight = new Flight();
+                mFlights.put(key, flight);
+                leader = true;
+            } else {
+                flight.waiters++;
+            }
+        }
+
+        return leader ? lead(chain, key, flight) : follow(chain, flight);
+    }
+
+    private Response lead(Chain chain, String key, Flight flight) throws IOException {
+        Throwable error = null;
+        try {
+            Response response = chain.proceed(chain.request());
+            final boolean shared;
+            synchronized (mFlights) {
+                mFlights.remove(key);
+                shared = flight.waiters > 0;
+            }
+            if (!shared) {
+                return response;
+            }
+
+            // Buffer the body, so it can be handed out to every waiter
+            ResponseBody body = response.body();
+            flight.body = body != null ? body.bytes() : null;
+            flight.response = response;
+            return copyResponse(response, chain.request(), flight.body);
+        } catch (Throwable t) {
+            // Not only IOExceptions: whatever went wrong must be seen by the waiters
+            error = t;
+            throw t;
+        } finally {
+            synchronized (mFlights) {
+                if (mFlights.get(key) == flight) {
+                    mFlights.remove(key);
+                }
+            }
+            flight.error = error;
+            flight.canceled = chain.call().isCanceled();
+            flight.done.countDown();
+        }
+    }
+
+    private Response follow(Chain chain, Flight flight) throws IOException {
+        try {
+            flight.done.await();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        if (flight.canceled) {
+            // The leading call was canceled by its owner, which doesn't mean we don't
+            // want the data anymore
+            return chain.proceed(chain.request());
+        }
+        if (flight.error != null) {
+            throw new IOException(flight.error.getMessage(), flight.error);
+        }
+        return copyResponse(flight.response, chain.request(), flight.body);
+    }
+
+    private static Response copyResponse(Response response, Request request, byte[] body) {
+        Response.Builder builder = response.newBuilder().request(request);
+        if (body != null) {
+            ResponseBody originalBody = response.body();
+            MediaType contentType = originalBody != null ? originalBody.contentType() : null;
+            builder.body(ResponseBody.create(body, contentType));
+        }
+        return builder.build();
+    }
+
+    private static String makeKey(Request request) {
+        return request.url() + "\n" + request.header("Accept")
+                + "\n" + request.header("Authorization")
+                + "\n" + request.header("Cache-Control");
+    }
+}
@@ -0,0 +1,51 @@
+package com.gh4a.utils;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Source that fails once more than a given number of bytes were read from it, so that
+ * responses with a missing or wrong Content-Length can't exhaust memory or disk space.
+ */
+class SizeLimitedSource extends ForwardingSource {
+    private final long mMaxBytes;
+    private long mBytesRead;
+
+    /**
+     * Wraps the given source. Fails early if the announced content length already
+     * exceeds the limit.
+     *
+     * @param contentLength Content length of the source, or -1 if unknown
+     */
+    static BufferedSource limit(BufferedSource source, long contentLength, long maxBytes)
+            throws IOException {
+        if (contentLength > maxBytes) {
+            throw new IOException("Content too large (" + contentLength + " bytes)");
+        }
+        return Okio.buffer(new SizeLimitedSource(source, maxBytes));
+    }
+
+    private SizeLimitedSource(Source delegate, long maxBytes) {
+        super(delegate);
+        mMaxBytes = maxBytes;
+    }
+
+    @Override
+    public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+        long read = super.read(sink, byteCount);
+        if (read > 0) {
+            mBytesRead += read;
+            if (mBytesRead > mMaxBytes) {
+                throw new IOException("Content exceeds limit of " + mMaxBytes + " bytes");
+            }
+        }
+        return read;
+    }
+}
@@ -0,0 +1,169 @@
+package com.gh4a.utils;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.text.Html.ImageGetter;
+import android.text.Spanned;
+import android.util.Log;
+
+import com.gh4a.BuildConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * Disk cache for HTML encoded by {@link HtmlUtils#encode(Context, String, ImageGetter)}, so
+ * that showing the same comments again doesn't need to parse their HTML. Entries are keyed by
+ * object id and HTML content (so edited comments are parsed again), as well as everything
+ * that influences the encoded spans: night mode, font scale, density and app version.
+ */
+class SpannedCache {
+    private static final String TAG = "SpannedCache";
+
+    private static final int VERSION = 1;
+    private static final long MAX_SIZE_BYTES = 8 * 1024 * 1024;
+    private static final int STORES_PER_TRIM = 20;
+
+    private static File sDirectory;
+    private static int sStoresSinceTrim;
+
+    /**
+     * Returns the cached encoded text, or null if there is none. Image spans are created
+     * using the given image getter. Reads from disk, so must not be called on the main thread.
+     */
+    static Spanned load(Context context, Object id, String html, ImageGetter imageGetter) {
+        File file = new File(getDirectory(context), makeKey(context, id, html));
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION) {
+                throw new IOException("Unknown version");
+            }
+            Spanned result = HtmlUtils.readEncoded(context, in, imageGetter);
+            // Without access times, the write time is used for determining what to trim
+            file.setLastModified(System.currentTimeMillis());
+            return result;
+        } catch (IOException e) {
+            Log.d(TAG, "Could not load cached text for " + id, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the encoded text in the background. Can be called on the main thread.
+     */
+    static void store(Context context, Object id, String html, Spanned encoded) {
+        File directory = getDirectory(context);
+        Schedulers.io().scheduleDirect(() -> {
+            // Hashing large documents isn't free either
+            String key = makeKey(context, id, html);
+            File tempFile = new File(directory, key + ".tmp");
+            try {
+                if (!directory.exists() && !directory.mkdirs()) {
+                    throw new IOException("Could not create " + directory);
+                }
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                    out.writeInt(VERSION);
+                    HtmlUtils.writeEncoded(out, encoded);
+                }
+                if (!tempFile.renameTo(new File(directory, key))) {
+                    throw new IOException("Could not rename " + tempFile);
+                }
+            } catch (IOException e) {
+                Log.d(TAG, "Could not cache text for " + id, e);
+                tempFile.delete();
+            }
+            if (shouldTrim()) {
+                trimToSize(directory);
+            }
+        });
+    }
+
+    /**
+     * Deletes all cached text in the background, e.g. as it may contain private data.
+     */
+    static void clear(Context context) {
+        File directory = getDirectory(context);
+        Schedulers.io().scheduleDirect(() -> {
+            File[] files = directory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                file.delete();
+            }
+        });
+    }
+
+    private static synchronized File getDirectory(Context context) {
+        if (sDirectory == null) {
+            sDirectory = new File(context.getApplicationContext().getCacheDir(), "spanned");
+        }
+        return sDirectory;
+    }
+
+    private static synchronized boolean shouldTrim() {
+        if (++sStoresSinceTrim < STORES_PER_TRIM) {
+            return false;
+        }
+        sStoresSinceTrim = 0;
+        return true;
+    }
+
+    private static void trimToSize(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        long totalSize = 0;
+        for (File file : files) {
+            totalSize += file.length();
+        }
+        // oldest first
+        Arrays.sort(files, (lhs, rhs) -> Long.compare(lhs.lastModified(), rhs.lastModified()));
+        for (int i = 0; i < files.length && totalSize > MAX_SIZE_BYTES; i++) {
+            totalSize -= files[i].length();
+            files[i].delete();
+        }
+    }
+
+    private static String makeKey(Context context, Object id, String html) {
+        Resources res = context.getResources();
+        Configuration config = res.getConfiguration();
+        String key = id + "|" + BuildConfig.VERSION_CODE
+                + "|" + (config.uiMode & Configuration.UI_MODE_NIGHT_MASK)
+                + "|" + config.fontScale
+                + "|" + res.getDisplayMetrics().densityDpi
+                + "|" + html;
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -14,7 +14,6 @@ import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
-import android.webkit.JavascriptInterface;
 import android.webkit.WebResourceRequest;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
@@ -25,15 +24,24 @@ import com.gh4a.R;
 import com.gh4a.activities.WebViewerActivity;
 import com.gh4a.utils.HtmlUtils;
 import com.gh4a.utils.IntentUtils;
-import com.gh4a.utils.StringUtils;
+
+import org.json.JSONObject;
 
 public class MarkdownPreviewWebView extends WebView implements NestedScrollingChild2 {
+    // Delay after the last edit before the preview is updated
+    private static final long UPDATE_DELAY_MS = 250;
+
     private final NestedScrollingChildHelper mChildHelper;
     private final int[] mScrollOffset = new int[2];
     private final int[] mScrollConsumed = new int[2];
     private int mNestedOffsetY;
     private int mLastY;
     private final String mCssTheme;
+    private EditText mEditor;
+    private boolean mPageLoaded;
+    // Text currently shown by the preview page
+    private String mRenderedText = "";
+    private final Runnable mUpdateRunnable = this::updatePreview;
 
     public MarkdownPreviewWebView(Context context) {
         this(context, null);
@@ -55,7 +63,8 @@ public class MarkdownPreviewWebView extends WebView implements NestedScrollingCh
         if (!isInEditMode()) {
             initWebViewSettings(getSettings());
             setWebViewClient(getUrlHandlingClient());
-            setContent("");
+            String html = generateMarkdownHtml(mCssTheme);
+            loadDataWithBaseURL("file:///android_asset/", html, null, "utf-8", null);
         }
     }
 
@@ -73,10 +82,18 @@ public class MarkdownPreviewWebView extends WebView implements NestedScrollingCh
                 IntentUtils.openLinkInternallyOrExternally((FragmentActivity) getContext(), Uri.parse(url));
                 return true;
             }
+
+            @Override
+            public void onPageFinished(WebView view, String url) {
+                mPageLoaded = true;
+                mRenderedText = "";
+                updatePreview();
+            }
         };
     }
 
     public void setEditText(EditText editor) {
+        mEditor = editor;
         editor.addTextChangedListener(new TextWatcher() {
             @Override
             public void beforeTextChanged(CharSequence s, int start, int count, int after) {
@@ -84,7 +101,9 @@ public class MarkdownPreviewWebView extends WebView implements NestedScrollingCh
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                setContent(s.toString());
+                // The text is only copied once the user stopped typing
+                removeCallbacks(mUpdateRunnable);
+                postDelayed(mUpdateRunnable, UPDATE_DELAY_MS);
             }
 
             @Override
@@ -93,6 +112,14 @@ public class MarkdownPreviewWebView extends WebView implements NestedScrollingCh
         });
     }
 
+    @Override
+    protected void onDetachedFromWindow() {
+        // Don't run a pending update after the view is gone, e.g. after the WebView
+        // was destroyed
+        removeCallbacks(mUpdateRunnable);
+        super.onDetachedFromWindow();
+    }
+
     @Override
     public boolean onTouchEvent(MotionEvent ev) {
         boolean result;
@@ -197,12 +224,44 @@ public class MarkdownPreviewWebView extends WebView implements NestedScrollingCh
         s.setAllowFileAccess(false);
     }
 
-    private void setContent(String content) {
-        String html = generateMarkdownHtml(StringUtils.toBase64(content), mCssTheme);
-        loadDataWithBaseURL("file:///android_asset/", html, null, "utf-8", null);
+    private void updatePreview() {
+        if (!mPageLoaded || mEditor == null) {
+            return;
+        }
+        String text = mEditor.getText().toString();
+        String old = mRenderedText;
+        if (text.equals(old)) {
+            return;
+        }
+
+        // Only send the changed part of the text to the page
+        int maxCommon = Math.min(old.length(), text.length());
+        int prefix = 0;
+        while (prefix < maxCommon && old.charAt(prefix) == text.charAt(prefix)) {
+            prefix++;
+        }
+        // Don't split surrogate pairs: a lone surrogate doesn't survive the transfer
+        // to the page, which would make its text diverge from ours
+        if (prefix > 0 && Character.isHighSurrogate(text.charAt(prefix - 1))) {
+            prefix--;
+        }
+        int suffix = 0;
+        while (suffix < maxCommon - prefix
+                && old.charAt(old.length() - 1 - suffix) == text.charAt(text.length() - 1 - suffix)) {
+            suffix++;
+        }
+        if (suffix > 0 && Character.isLowSurrogate(text.charAt(text.length() - suffix))) {
+            suffix--;
+        }
+        String inserted = text.substring(prefix, text.length() - suffix);
+        int deleteCount = old.length() - prefix - suffix;
+
+        evaluateJavascript("applyTextChange(" + prefix + ", " + deleteCount + ", "
+                + JSONObject.quote(inserted) + ");", null);
+        mRenderedText = text;
     }
 
-    private String generateMarkdownHtml(String base64Data, String cssTheme) {
+    private String generateMarkdownHtml(String cssTheme) {
         StringBuilder content = new StringBuilder();
         content.append("<html><head>");
         HtmlUtils.writeScriptInclude(content, "showdown");
@@ -212,27 +271,9 @@ public class MarkdownPreviewWebView extends WebView implements NestedScrollingCh
 
         content.append("<body>");
         content.append("<div id='content'></div>");
-
-        addJavascriptInterface(new Base64JavascriptInterface(), "Base64");
-        content.append("<script>");
-        content.append("var text = Base64.decode('");
-        content.append(base64Data);
-        content.append("');\n");
-        content.append("var converter = new showdown.Converter();\n");
-        content.append("converter.setFlavor('github');\n");
-        content.append("var html = converter.makeHtml(text);\n");
-        content.append("document.getElementById('content').innerHTML = html;");
-        content.append("</script>");
-
+        HtmlUtils.writeScriptInclude(content, "mdpreview");
         content.append("</body></html>");
 
         return content.toString();
     }
-
-    private static class Base64JavascriptInterface {
-        @JavascriptInterface
-        public String decode(String base64) {
-            return StringUtils.fromBase64(base64);
-        }
-    }
 }
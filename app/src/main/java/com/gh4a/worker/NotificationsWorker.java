@@ -18,6 +18,7 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.os.Build;
 import androidx.annotation.NonNull;
+import androidx.collection.LongSparseArray;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationManagerCompat;
 import androidx.core.content.ContextCompat;
@@ -157,7 +158,7 @@ public class NotificationsWorker extends Worker {
         try {
             Log.d(TAG, "Starting notification fetch in background");
             NotificationListLoadResult result =
-                    SingleFactory.getNotifications(false, false, false).blockingGet();
+                    SingleFactory.getNotificationsInBackground().blockingGet();
             for (NotificationHolder holder : result.notifications) {
                 if (holder.notification == null) {
                     notifsGroupedByRepo.add(new ArrayList<>());
@@ -172,6 +173,15 @@ public class NotificationsWorker extends Worker {
             return Result.failure();
         }
 
+        // Fetch the avatars up front and in parallel, instead of one by one while holding
+        // the lock. The timestamp check below is repeated with the lock held; checking
+        // it here only avoids fetching avatars that won't be shown anyway.
+        long lastSeenBeforeFetch = getPrefs(getApplicationContext())
+                .getLong(KEY_LAST_NOTIFICATION_SEEN, 0);
+        LongSparseArray<Bitmap> ownerAvatars =
+                hasNotificationNewerThan(notifsGroupedByRepo, lastSeenBeforeFetch)
+                ? loadRoundOwnerAvatars(notifsGroupedByRepo) : new LongSparseArray<>();
+
         synchronized (sPrefsLock) {
             SharedPreferences prefs = getPrefs(getApplicationContext());
             long lastCheck = prefs.getLong(KEY_LAST_NOTIFICATION_CHECK, 0);
@@ -205,7 +215,7 @@ public class NotificationsWorker extends Worker {
 
             showSummaryNotification(nm, notifsGroupedByRepo, hasNewNotification);
             for (List<NotificationThread> list : notifsGroupedByRepo) {
-                showRepoNotification(nm, list, lastCheck);
+                showRepoNotification(nm, list, lastCheck, ownerAvatars);
                 String repoId = String.valueOf(list.get(0).repository().id());
                 if (lastShownRepoIds != null) {
                     lastShownRepoIds.remove(repoId);
@@ -231,7 +241,8 @@ public class NotificationsWorker extends Worker {
     }
 
     private void showRepoNotification(NotificationManagerCompat nm,
-            List<NotificationThread> notifications, long lastCheck) {
+            List<NotificationThread> notifications, long lastCheck,
+            LongSparseArray<Bitmap> ownerAvatars) {
         final Context context = getApplicationContext();
         Repository repository = notifications.get(0).repository();
         final int id = repository.id().intValue();
@@ -269,7 +280,7 @@ public class NotificationsWorker extends Worker {
                 .build();
 
         NotificationCompat.Builder builder = makeBaseBuilder()
-                .setLargeIcon(loadRoundUserAvatar(repository.owner()))
+                .setLargeIcon(ownerAvatars.get(repository.owner().id()))
                 .setGroup(GROUP_ID_GITHUB)
                 .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
                 .setWhen(when)
@@ -393,12 +404,34 @@ public class NotificationsWorker extends Worker {
                 .setColor(ContextCompat.getColor(getApplicationContext(), R.color.octodroid));
     }
 
-    private Bitmap loadRoundUserAvatar(User user) {
-        Bitmap avatar = AvatarHandler.loadUserAvatarSynchronously(getApplicationContext(), user);
-        if (avatar == null) {
-            return null;
+    private static boolean hasNotificationNewerThan(
+            List<List<NotificationThread>> notificationsPerRepo, long timestamp) {
+        for (List<NotificationThread> list : notificationsPerRepo) {
+            for (NotificationThread n : list) {
+                if (n.updatedAt().getTime() > timestamp) {
+                    return true;
+                }
+            }
         }
+        return false;
+    }
+
+    private LongSparseArray<Bitmap> loadRoundOwnerAvatars(
+            List<List<NotificationThread>> notificationsPerRepo) {
+        List<User> owners = new ArrayList<>();
+        for (List<NotificationThread> list : notificationsPerRepo) {
+            owners.add(list.get(0).repository().owner());
+        }
+
+        LongSparseArray<Bitmap> avatars =
+                AvatarHandler.loadUserAvatarsSynchronously(getApplicationContext(), owners);
+        for (int i = 0; i < avatars.size(); i++) {
+            avatars.setValueAt(i, makeRoundAvatar(avatars.valueAt(i)));
+        }
+        return avatars;
+    }
 
+    private static Bitmap makeRoundAvatar(Bitmap avatar) {
         final Bitmap output = Bitmap.createBitmap(avatar.getWidth(), avatar.getHeight(),
                 Bitmap.Config.ARGB_8888);
         final Canvas canvas = new Canvas(output);
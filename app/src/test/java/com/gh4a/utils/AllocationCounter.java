@@ -0,0 +1,17 @@
+package com.gh4a.utils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures heap allocations of the current thread for the benchmarks in the unit tests.
+ * Relies on the HotSpot specific {@code com.sun.management} API.
+ */
+final class AllocationCounter {
+    private AllocationCounter() {
+    }
+
+    static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,132 @@
+package com.gh4a.utils;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assume.assumeTrue;
+
+public class CssStyleScannerTest {
+    private final CssStyleScanner mScanner = new CssStyleScanner();
+
+    @Test
+    public void find__matchesWholePropertyNames() {
+        String style = "background-color: #00ff00; color:red";
+        assertThat(mScanner.find(style, "color"), is(true));
+        assertThat(mScanner.valueEquals("red"), is(true));
+        assertThat(mScanner.find(style, "background"), is(false));
+        assertThat(mScanner.find(style, "background-color"), is(true));
+        assertThat(mScanner.parseColor(), is(0xff00ff00));
+    }
+
+    @Test
+    public void find__usesFirstTokenOfLastDeclaration() {
+        String style = " TEXT-ALIGN : left ; text-align:Center !important;";
+        assertThat(mScanner.find(style, "text-align"), is(true));
+        assertThat(mScanner.valueEquals("center"), is(true));
+        assertThat(mScanner.valueEquals("left"), is(false));
+    }
+
+    @Test
+    public void find__ignoresEmptyAndMalformedDeclarations() {
+        assertThat(mScanner.find("color:", "color"), is(false));
+        assertThat(mScanner.find("color red; ;;", "color"), is(false));
+        assertThat(mScanner.find("", "color"), is(false));
+    }
+
+    @Test
+    public void parseColor__matchesAndroidColorFormats() {
+        assertThat(parse("#1a2B3c"), is(0xff1a2b3c));
+        assertThat(parse("#801a2b3c"), is(0xff1a2b3c));
+        assertThat(parse("Maroon"), is(0xff800000));
+        assertThat(parse("#abc"), is(CssStyleScanner.NO_COLOR));
+        assertThat(parse("#12345g"), is(CssStyleScanner.NO_COLOR));
+        assertThat(parse("rgb(1,2,3)"), is(CssStyleScanner.NO_COLOR));
+    }
+
+    /**
+     * Compares the scanner to the regular expressions it replaced. Only runs if the
+     * GH4A_HTML_BENCHMARK environment variable is set.
+     */
+    @Test
+    public void benchmark__scannerVersusRegex() {
+        assumeTrue(System.getenv("GH4A_HTML_BENCHMARK") != null);
+        final String[] styles = {
+            "text-align: center", "color: #cb2431; background-color: #ffeef0",
+            "text-decoration: line-through", "max-width: 100%; background: #fff url(x.png)"
+        };
+        final Pattern textAlign = Pattern.compile("(?:\\s+|\\A)text-align\\s*:\\s*(\\S*)\\b");
+        final Pattern color = Pattern.compile("(?:\\s+|\\A)color\\s*:\\s*(\\S*)\\b");
+        final Pattern background =
+                Pattern.compile("(?:\\s+|\\A)background(?:-color)?\\s*:\\s*(\\S*)\\b");
+        final Pattern textDecoration =
+                Pattern.compile("(?:\\s+|\\A)text-decoration\\s*:\\s*(\\S*)\\b");
+        final int iterations = 200000;
+
+        Runnable regex = () -> {
+            for (String style : styles) {
+                Matcher m = textAlign.matcher(style);
+                if (m.find()) {
+                    m.group(1).equalsIgnoreCase("center");
+                }
+                m = color.matcher(style);
+                if (m.find()) {
+                    m.group(1);
+                }
+                m = background.matcher(style);
+                if (m.find()) {
+                    m.group(1);
+                }
+                m = textDecoration.matcher(style);
+                if (m.find()) {
+                    m.group(1).equalsIgnoreCase("line-through");
+                }
+            }
+        };
+        Runnable scanner = () -> {
+            for (String style : styles) {
+                if (mScanner.find(style, "text-align")) {
+                    mScanner.valueEquals("center");
+                }
+                if (mScanner.find(style, "color")) {
+                    mScanner.parseColor();
+                }
+                if (mScanner.find(style, "background-color")
+                        || mScanner.find(style, "background")) {
+                    mScanner.parseColor();
+                }
+                if (mScanner.find(style, "text-decoration")) {
+                    mScanner.valueEquals("line-through");
+                }
+            }
+        };
+
+        for (int i = 0; i < iterations / 10; i++) {
+            regex.run();
+            scanner.run();
+        }
+        report("regex", regex, iterations);
+        report("scanner", scanner, iterations);
+    }
+
+    private int parse(String value) {
+        assertThat(mScanner.find("color: " + value, "color"), is(true));
+        return mScanner.parseColor();
+    }
+
+    private static void report(String name, Runnable r, int iterations) {
+        long startBytes = AllocationCounter.getAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            r.run();
+        }
+        long nanos = (System.nanoTime() - start) / iterations;
+        long bytes = (AllocationCounter.getAllocatedBytes() - startBytes) / iterations;
+        System.out.println(String.format(Locale.US,
+                "%-8s %8.2f us/op, %6d bytes/op", name, nanos / 1000.0, bytes));
+    }
+}
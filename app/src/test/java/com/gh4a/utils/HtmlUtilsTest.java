@@ -0,0 +1,163 @@
+package com.gh4a.utils;
+
+import android.content.Context;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.text.Html.ImageGetter;
+import android.text.Spanned;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assume.assumeTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class HtmlUtilsTest {
+    // Comment bodies and READMEs as returned by the GitHub API
+    private static final String[] CORPUS = {
+        "issue_comment_basic", "pull_request_review", "code_blocks",
+        "suggested_change_table", "readme"
+    };
+
+    private static final ImageGetter IMAGE_GETTER = source -> {
+        Drawable d = new ColorDrawable();
+        d.setBounds(0, 0, 10, 10);
+        return d;
+    };
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.getApplication();
+    }
+
+    @Test
+    public void corpus__tokenizerMatchesTagSoup() throws Exception {
+        for (String name : CORPUS) {
+            String html = loadCorpusFile(name);
+            Spanned expected = HtmlUtils.encodeWithTagSoup(mContext, html, IMAGE_GETTER);
+            Spanned actual = HtmlUtils.encodeWithTokenizer(mContext, html, IMAGE_GETTER);
+            assertThat("Text differs for " + name,
+                    actual.toString(), is(expected.toString()));
+            assertThat("Spans differ for " + name, describeSpans(actual), is(describeSpans(expected)));
+        }
+    }
+
+    @Test(expected = GitHubHtmlTokenizer.MalformedHtmlException.class)
+    public void unclosedElement__isRejectedByTokenizer() throws Exception {
+        HtmlUtils.encodeWithTokenizer(mContext, "<p>Unclosed <b>bold</p>", IMAGE_GETTER);
+    }
+
+    @Test(expected = GitHubHtmlTokenizer.MalformedHtmlException.class)
+    public void blockInInlineElement__isRejectedByTokenizer() throws Exception {
+        HtmlUtils.encodeWithTokenizer(mContext, "<p>Text <div>block</div></p>", IMAGE_GETTER);
+    }
+
+    @Test
+    public void malformedHtml__fallsBackToTagSoup() {
+        String html = "<p>Unclosed <b>bold</p><p>&copy; <i>text";
+        CharSequence result = HtmlUtils.encode(mContext, html, IMAGE_GETTER);
+        Spanned expected = HtmlUtils.encodeWithTagSoup(mContext, html, IMAGE_GETTER);
+        assertThat(result.toString(), is(expected.toString()));
+    }
+
+    @Test
+    public void corpus__survivesSerialization() throws Exception {
+        for (String name : CORPUS) {
+            Spanned encoded = (Spanned) HtmlUtils.encode(mContext, loadCorpusFile(name), IMAGE_GETTER);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            HtmlUtils.writeEncoded(new DataOutputStream(bytes), encoded);
+            Spanned restored = HtmlUtils.readEncoded(mContext,
+                    new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), IMAGE_GETTER);
+
+            assertThat("Text differs for " + name, restored.toString(), is(encoded.toString()));
+            assertThat("Spans differ for " + name, describeSpans(restored), is(describeSpans(encoded)));
+        }
+    }
+
+    /**
+     * Rough benchmark of both parsers over the corpus, reporting time and allocated bytes per
+     * document. Only runs if the GH4A_HTML_BENCHMARK environment variable is set, e.g.
+     * {@code GH4A_HTML_BENCHMARK=1 ./gradlew testDebugUnitTest --tests '*HtmlUtilsTest*'}
+     */
+    @Test
+    public void benchmark__tokenizerVersusTagSoup() throws Exception {
+        assumeTrue(System.getenv("GH4A_HTML_BENCHMARK") != null);
+        final int warmupIterations = 50;
+        final int measuredIterations = 200;
+
+        for (String name : CORPUS) {
+            String html = loadCorpusFile(name);
+            for (int i = 0; i < warmupIterations; i++) {
+                HtmlUtils.encodeWithTagSoup(mContext, html, IMAGE_GETTER);
+                HtmlUtils.encodeWithTokenizer(mContext, html, IMAGE_GETTER);
+            }
+
+            long startBytes = AllocationCounter.getAllocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < measuredIterations; i++) {
+                HtmlUtils.encodeWithTagSoup(mContext, html, IMAGE_GETTER);
+            }
+            long tagSoupNanos = (System.nanoTime() - start) / measuredIterations;
+            long tagSoupBytes =
+                    (AllocationCounter.getAllocatedBytes() - startBytes) / measuredIterations;
+
+            startBytes = AllocationCounter.getAllocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < measuredIterations; i++) {
+                HtmlUtils.encodeWithTokenizer(mContext, html, IMAGE_GETTER);
+            }
+            long tokenizerNanos = (System.nanoTime() - start) / measuredIterations;
+            long tokenizerBytes =
+                    (AllocationCounter.getAllocatedBytes() - startBytes) / measuredIterations;
+
+            System.out.println(String.format(Locale.US,
+                    "%-24s %6d chars: TagSoup %8.1f us/op %8d B/op, "
+                            + "tokenizer %8.1f us/op %8d B/op (%.2fx)",
+                    name, html.length(), tagSoupNanos / 1000.0, tagSoupBytes,
+                    tokenizerNanos / 1000.0, tokenizerBytes,
+                    (double) tagSoupNanos / tokenizerNanos));
+        }
+    }
+
+    private static String describeSpans(Spanned spanned) {
+        StringBuilder sb = new StringBuilder();
+        for (Object span : spanned.getSpans(0, spanned.length(), Object.class)) {
+            sb.append(span.getClass().getName())
+                    .append(' ').append(spanned.getSpanStart(span))
+                    .append('-').append(spanned.getSpanEnd(span))
+                    .append(" flags=").append(spanned.getSpanFlags(span))
+                    .append(' ').append(HtmlUtils.describeSpan(span))
+                    .append('\n');
+        }
+        return sb.toString();
+    }
+
+    private String loadCorpusFile(String name) throws IOException {
+        try (InputStream is = getClass().getClassLoader()
+                .getResourceAsStream("html-corpus/" + name + ".html")) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString(StandardCharsets.UTF_8.name());
+        }
+    }
+}